@@ -0,0 +1,70 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import org.hibernate.QueryException;
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.Type;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Registers the {@code bitand(a, b)} query function, the bitwise and of two integers, which HQL has no operator for.
+ * It is what queries test the enum sets stored by {@link com.udacity.jdnd.course3.critter.entity.EnumSetConverter}
+ * with, and is rendered as the {@code &} operator, or as the {@code BITAND} function on the databases that lack it.
+ */
+@Configuration
+public class BitmaskFunctionConfig {
+    /**
+     * Name of the function in queries
+     */
+    public static final String BITAND = "bitand";
+
+    /**
+     * Adds the function to the Hibernate metadata.
+     * @return the customizer of the JPA properties
+     */
+    @Bean
+    public HibernatePropertiesCustomizer bitmaskFunctionCustomizer() {
+        MetadataBuilderContributor contributor = builder -> builder.applySqlFunction(BITAND, new BitAndFunction());
+        return properties -> properties.put(EntityManagerFactoryBuilderImpl.METADATA_BUILDER_CONTRIBUTOR, contributor);
+    }
+
+    private static final class BitAndFunction implements SQLFunction {
+        @Override
+        public boolean hasArguments() {
+            return true;
+        }
+
+        @Override
+        public boolean hasParenthesesIfNoArguments() {
+            return true;
+        }
+
+        @Override
+        public Type getReturnType(Type firstArgumentType, Mapping mapping) {
+            return IntegerType.INSTANCE;
+        }
+
+        @Override
+        public String render(Type firstArgumentType, List arguments, SessionFactoryImplementor factory) {
+            if (arguments.size() != 2) {
+                throw new QueryException(BITAND + "() takes two arguments");
+            }
+            Dialect dialect = factory.getJdbcServices().getDialect();
+            if (dialect instanceof H2Dialect || dialect instanceof Oracle8iDialect) {
+                return "bitand(" + arguments.get(0) + ", " + arguments.get(1) + ")";
+            }
+            return "(" + arguments.get(0) + " & " + arguments.get(1) + ")";
+        }
+    }
+}
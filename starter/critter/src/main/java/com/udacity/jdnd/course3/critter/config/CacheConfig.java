@@ -0,0 +1,59 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+
+/**
+ * Local read-through caches for the entities that are read far more often than they change.
+ *
+ * The caches are bounded Caffeine caches configured by {@code critter.cache.spec}. They are transaction aware: puts
+ * and evictions made inside a transaction are only applied once it commits, so a rolled back write never reaches the
+ * cache. A reader's put may still land after a writer has committed and evicted the row the reader read before, so
+ * the caches are {@link EvictionGuardedCache}s, which drop the puts of values missed before the last eviction of their
+ * key. Hit, miss and eviction counters are published as the {@code cache.*} metrics of the actuator.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    /**
+     * Pets by pet id
+     */
+    public static final String PETS = "pets";
+
+    /**
+     * Owners, with their pets, by the id of one of their pets
+     */
+    public static final String OWNERS = "owners";
+
+    /**
+     * Employees, with their skills and days available, by employee id
+     */
+    public static final String EMPLOYEES = "employees";
+
+    /**
+     * Creates the cache manager. Only the caches named here exist, so a misspelt cache name fails instead of
+     * silently creating an unbounded cache.
+     * @param specification Caffeine specification applied to every cache
+     * @return the transaction aware cache manager
+     */
+    @Bean
+    public CacheManager cacheManager(@Value("${critter.cache.spec}") String specification) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected Cache createCaffeineCache(String name) {
+                return new EvictionGuardedCache(name, createNativeCaffeineCache(name), isAllowNullValues());
+            }
+        };
+        cacheManager.setCacheSpecification(specification);
+        cacheManager.setCacheNames(Arrays.asList(PETS, OWNERS, EMPLOYEES));
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -0,0 +1,67 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Lets at most a fixed number of threads use the database at once. Sized to the connection pool, it makes excess
+ * requests wait for a permit in arrival order rather than pile up on the pool and fail with connection timeouts.
+ *
+ * The request handlers of the controllers are guarded, and the limiter runs ahead of any other advice, the
+ * transaction advice included, so a request takes its permit before a transactional controller opens its transaction
+ * and a waiting request holds no connection. Every {@code @Service} of the service package is guarded too, for the
+ * callers that reach the services outside a handler, such as the interceptors. A thread already holding a permit does
+ * not take a second one when it calls another guarded method, so the services a handler calls run on the handler's
+ * permit.
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DatabaseConcurrencyLimiter {
+    /**
+     * Pointcut of the guarded methods: the public methods of the controllers and of the services
+     */
+    public static final String GUARDED = "(execution(public * com.udacity.jdnd.course3.critter.controller..*.*(..)) "
+            + "&& @within(org.springframework.web.bind.annotation.RestController)) "
+            + "|| (execution(public * com.udacity.jdnd.course3.critter.service..*.*(..)) "
+            + "&& @within(org.springframework.stereotype.Service))";
+
+    private final Semaphore permits;
+
+    private final ThreadLocal<Boolean> holding = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Creates a limiter.
+     * @param maxConcurrency the number of threads allowed in the guarded methods at once
+     */
+    public DatabaseConcurrencyLimiter(int maxConcurrency) {
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    @Around(GUARDED)
+    public Object limit(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (holding.get()) {
+            return joinPoint.proceed();
+        }
+        permits.acquire();
+        holding.set(true);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            holding.set(false);
+            permits.release();
+        }
+    }
+
+    /**
+     * Gets the number of permits currently free.
+     * @return the free permits
+     */
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+}
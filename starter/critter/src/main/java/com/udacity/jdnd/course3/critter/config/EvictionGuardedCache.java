@@ -0,0 +1,110 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caffeine cache that drops the puts of values read before the last eviction of their key.
+ *
+ * A value is put by the thread that missed it, once the read has committed, which may be after a writer changed the
+ * row and evicted the key. Each eviction bumps the generation of the key, and each miss records the generation it
+ * saw on the missing thread; a put is only applied if the generation is still the one recorded by the miss, so a
+ * value read before an eviction never outlives it. Keys share their generations in a fixed number of stripes, so an
+ * eviction may also drop the puts of a few unrelated keys, which are then only read again on their next miss.
+ */
+class EvictionGuardedCache extends CaffeineCache {
+    private static final int STRIPES = 1024;
+
+    /**
+     * Number of misses a thread records before dropping them, bounding the misses of reads that never put
+     */
+    private static final int MAX_MISSES = 1024;
+
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    /**
+     * Generation seen by the last miss of each key on the current thread
+     */
+    private final ThreadLocal<Map<Object, Long>> misses = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Creates the cache.
+     * @param name the name of the cache
+     * @param cache the Caffeine cache holding the values
+     * @param allowNullValues whether null values are cached
+     */
+    EvictionGuardedCache(String name, Cache<Object, Object> cache, boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object value = super.lookup(key);
+        if (value == null) {
+            Map<Object, Long> seen = misses.get();
+            if (seen.size() >= MAX_MISSES) {
+                seen.clear();
+            }
+            seen.put(key, generations.get(stripe(key)));
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (current(key)) {
+            super.put(key, value);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return current(key) ? super.putIfAbsent(key, value) : null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        generations.incrementAndGet(stripe(key));
+        super.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        generations.incrementAndGet(stripe(key));
+        return super.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        bumpAll();
+        super.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        bumpAll();
+        return super.invalidate();
+    }
+
+    /**
+     * Tells whether a value about to be put was read after the last eviction of its key, and forgets its miss.
+     */
+    private boolean current(Object key) {
+        Long seen = misses.get().remove(key);
+        return seen != null && seen == generations.get(stripe(key));
+    }
+
+    private void bumpAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+    }
+
+    private static int stripe(Object key) {
+        return Math.floorMod(key.hashCode(), STRIPES);
+    }
+}
@@ -0,0 +1,88 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in request execution mode, enabled with {@code critter.execution.mode=virtual}.
+ *
+ * Requests are handled on virtual threads when the runtime has them (Java 21 and later), so a request blocked on
+ * JDBC no longer holds one of Tomcat's platform threads. On older runtimes, Java 11 included, a pool of
+ * {@code critter.execution.max-threads} platform threads is used instead, with at most
+ * {@code critter.execution.queue-capacity} requests waiting for a thread; requests beyond that are answered with 503
+ * Service Unavailable by the {@link LoadSheddingFilter}. Virtual threads are not queued, as every request gets one.
+ * In both cases the controllers and services are guarded by a {@link DatabaseConcurrencyLimiter}, so the number of
+ * requests using the database at once stays capped at the size of the connection pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "critter.execution.mode", havingValue = "virtual")
+public class ExecutionConfig {
+    private static final Logger log = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    /**
+     * Creates the executor Tomcat hands requests to.
+     * @param maxThreads size of the platform thread pool used when virtual threads are not available
+     * @param queueCapacity number of requests that may wait for a platform thread before further ones are shed
+     * @return the request executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService requestExecutor(@Value("${critter.execution.max-threads:200}") int maxThreads,
+                                           @Value("${critter.execution.queue-capacity:1000}") int queueCapacity) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Handling requests on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available on Java {}, handling requests on up to {} platform threads "
+                    + "with up to {} waiting", System.getProperty("java.specification.version"), maxThreads, queueCapacity);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), LoadSheddingFilter.SHED);
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Makes Tomcat handle requests on the request executor instead of its own thread pool.
+     * @param requestExecutor the request executor
+     * @return the customizer of Tomcat's protocol handler
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> requestExecutorCustomizer(ExecutorService requestExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    /**
+     * Creates the filter answering the requests shed by the request executor.
+     * @param retryAfterSeconds number of seconds after which a shed request may be retried
+     * @return the filter
+     */
+    @Bean
+    public LoadSheddingFilter loadSheddingFilter(@Value("${critter.execution.retry-after-seconds:1}") int retryAfterSeconds) {
+        return new LoadSheddingFilter(retryAfterSeconds);
+    }
+
+    /**
+     * Creates the limiter capping the requests' concurrent use of the database.
+     * @param maximumPoolSize size of the connection pool, and so the number of permits
+     * @return the limiter
+     */
+    @Bean
+    public DatabaseConcurrencyLimiter databaseConcurrencyLimiter(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maximumPoolSize) {
+        return new DatabaseConcurrencyLimiter(maximumPoolSize);
+    }
+}
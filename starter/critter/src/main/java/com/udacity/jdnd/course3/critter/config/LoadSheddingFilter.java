@@ -0,0 +1,65 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+
+/**
+ * Answers the requests the request executor has no room for with 503 Service Unavailable.
+ *
+ * Tomcat closes the connection of a request its executor rejects, without any response. Instead, {@link #SHED} runs
+ * the rejected request on the thread that submitted it with a flag set, and this filter answers a flagged request
+ * straight away, so the client gets a status and a {@code Retry-After} header while the submitting thread is only
+ * held for as long as it takes to write them.
+ */
+public class LoadSheddingFilter extends OncePerRequestFilter {
+    /**
+     * Whether the request being handled on the current thread was rejected by the executor
+     */
+    private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Rejection policy of the request executor, running a rejected request on the submitting thread to be answered
+     * with 503. Requests submitted after the executor was shut down are rejected as usual.
+     */
+    public static final RejectedExecutionHandler SHED = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The request executor has been shut down");
+        }
+        SHEDDING.set(true);
+        try {
+            task.run();
+        } finally {
+            SHEDDING.remove();
+        }
+    };
+
+    private final int retryAfterSeconds;
+
+    /**
+     * Creates the filter.
+     * @param retryAfterSeconds number of seconds after which a shed request may be retried
+     */
+    public LoadSheddingFilter(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (SHEDDING.get()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,21 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Routes the reads of the methods marked with {@link ReadFromPrimary} to the primary. The pin only changes which
+ * pool a transaction borrows its connection from, so it costs nothing when no replica is configured.
+ */
+@Aspect
+@Component
+public class PrimaryReadAspect {
+    @Around("@annotation(com.udacity.jdnd.course3.critter.config.ReadFromPrimary)")
+    public Object readFromPrimary(ProceedingJoinPoint joinPoint) throws Throwable {
+        try (ReadOnlyRoutingDataSource.PrimaryPin pin = ReadOnlyRoutingDataSource.pinToPrimary()) {
+            return joinPoint.proceed();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read whose result outlives the request, such as one filling a cache, so that its read-only transaction
+ * runs on the primary rather than on a replica that may not have caught up with the latest writes yet. The
+ * {@link PrimaryReadAspect} pins the thread to the primary for the duration of the call.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadFromPrimary {
+}
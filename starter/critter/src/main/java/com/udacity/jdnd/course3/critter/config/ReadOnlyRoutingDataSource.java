@@ -0,0 +1,95 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Data source that hands out replica connections inside read-only transactions and primary connections everywhere
+ * else, including outside of any transaction. A thread pinned with {@link #pinToPrimary()} gets primary connections
+ * for its read-only transactions as well.
+ *
+ * The read-only flag of a transaction is only published once the transaction has begun, so this data source must be
+ * wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which defers picking the
+ * target until the first statement runs.
+ */
+public class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    /**
+     * Number of open pins of each thread
+     */
+    private static final ThreadLocal<Integer> PRIMARY_PINS = ThreadLocal.withInitial(() -> 0);
+
+    private final DataSource primary;
+    private final DataSource replica;
+
+    /**
+     * Creates the routing data source.
+     * @param primary data source used for writes and for reads outside of read-only transactions
+     * @param replica data source used inside read-only transactions
+     */
+    public ReadOnlyRoutingDataSource(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        targets.put(REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Routes the read-only transactions of the current thread to the primary until the returned pin is closed. A
+     * transaction keeps the connection it borrowed at its first statement, so the pin only affects the transactions
+     * that have not run one yet. Pins may be nested.
+     * @return the pin, to close once the reads are done
+     */
+    public static PrimaryPin pinToPrimary() {
+        PRIMARY_PINS.set(PRIMARY_PINS.get() + 1);
+        return () -> {
+            int pins = PRIMARY_PINS.get() - 1;
+            if (pins > 0) {
+                PRIMARY_PINS.set(pins);
+            } else {
+                PRIMARY_PINS.remove();
+            }
+        };
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && PRIMARY_PINS.get() == 0 ? REPLICA : PRIMARY;
+    }
+
+    /**
+     * Closes the primary and replica data sources, if they can be closed.
+     */
+    @Override
+    public void close() {
+        for (DataSource target : new DataSource[]{replica, primary}) {
+            if (target instanceof Closeable) {
+                try {
+                    ((Closeable) target).close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pin of the current thread to the primary, released when closed
+     */
+    public interface PrimaryPin extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,96 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+
+/**
+ * Sends read-only transactions to a replica database, enabled by setting {@code critter.datasource.replica.url}.
+ *
+ * The primary pool is configured from the usual {@code spring.datasource} properties. The replica pool takes its
+ * url, username and password from {@code critter.datasource.replica}, falling back to the primary's credentials, and
+ * its pool settings from {@code critter.datasource.replica.hikari}. Reads that must see a write made moments ago,
+ * such as the index loads at startup, should run in a read-write transaction so that replication lag cannot hide it.
+ *
+ * Reads whose result outlives the request stay on the primary as well: the lookups filling the entity caches are
+ * marked with {@link ReadFromPrimary}, and the handlers answered with ETags are pinned to the primary for the whole
+ * request. A replica lagging behind a commit would otherwise put the old entity in the cache until its next change,
+ * or send the old response under the ETag of the new version, which clients then revalidate with 304 Not Modified
+ * until the next change. This moves those reads to the primary on every cache miss and on every conditional GET, which is the price of never serving stale data from them; the other reads
+ * still go to the replica and may lag behind by the replication delay.
+ *
+ * The pools are built inside the one data source bean rather than exposed as beans of their own, since Spring Boot
+ * initializes the primary data source whenever any data source bean is created.
+ */
+@Configuration
+@ConditionalOnProperty(name = "critter.datasource.replica.url")
+public class ReplicaRoutingConfig {
+
+    /**
+     * Creates the data source used by JPA, which routes each transaction to the primary or the replica pool. Both
+     * pools publish the {@code hikaricp.*} metrics, tagged with their pool name.
+     * @param properties the {@code spring.datasource} properties
+     * @param environment the environment holding the replica and pool properties
+     * @param meterRegistry the registry of the pool metrics, if metrics are enabled
+     * @return the routing data source
+     */
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        Binder binder = Binder.get(environment);
+
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName(ReadOnlyRoutingDataSource.PRIMARY);
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        //replica connections are marked read-only, so a write routed there by mistake fails instead of diverging
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName(ReadOnlyRoutingDataSource.REPLICA);
+        replica.setDriverClassName(properties.determineDriverClassName());
+        replica.setJdbcUrl(environment.getRequiredProperty("critter.datasource.replica.url"));
+        replica.setUsername(environment.getProperty("critter.datasource.replica.username", properties.determineUsername()));
+        replica.setPassword(environment.getProperty("critter.datasource.replica.password", properties.determinePassword()));
+        replica.setReadOnly(true);
+        binder.bind("critter.datasource.replica.hikari", Bindable.ofInstance(replica));
+
+        meterRegistry.ifAvailable(registry -> {
+            primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        });
+
+        ReadOnlyRoutingDataSource routing = new ReadOnlyRoutingDataSource(primary, replica);
+        routing.afterPropertiesSet();
+        return new LazyRoutingDataSource(routing);
+    }
+
+    /**
+     * Defers borrowing a connection until the first statement, by which time the read-only flag of the transaction
+     * is known, and closes both pools when the application shuts down.
+     */
+    static class LazyRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+        private final ReadOnlyRoutingDataSource routing;
+
+        LazyRoutingDataSource(ReadOnlyRoutingDataSource routing) {
+            this.routing = routing;
+            setTargetDataSource(routing);
+            afterPropertiesSet();
+        }
+
+        @Override
+        public void close() {
+            routing.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.udacity.jdnd.course3.critter.config;
+
+import com.udacity.jdnd.course3.critter.controller.ConditionalGetInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Registers the interceptors of the web requests.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private final ConditionalGetInterceptor conditionalGetInterceptor;
+
+    /**
+     * Creates the configuration.
+     * @param conditionalGetInterceptor interceptor answering conditional GETs from the aggregate versions
+     */
+    public WebConfig(ConditionalGetInterceptor conditionalGetInterceptor) {
+        this.conditionalGetInterceptor = conditionalGetInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(conditionalGetInterceptor);
+    }
+}
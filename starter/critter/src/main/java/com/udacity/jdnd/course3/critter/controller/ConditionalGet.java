@@ -0,0 +1,45 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a GET handler whose response only changes with the version of one customer or employee. The
+ * {@link ConditionalGetInterceptor} answers it with the ETag of that version, and with 304 Not Modified when the
+ * request's {@code If-None-Match} already names it.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@interface ConditionalGet {
+    /**
+     * What the path variable identifies
+     */
+    enum Key {
+        /**
+         * The customer
+         */
+        CUSTOMER,
+
+        /**
+         * A pet, versioned by its owner
+         */
+        PET_OWNER,
+
+        /**
+         * The employee
+         */
+        EMPLOYEE
+    }
+
+    /**
+     * @return what the path variable identifies
+     */
+    Key value();
+
+    /**
+     * @return the name of the path variable holding the id
+     */
+    String pathVariable();
+}
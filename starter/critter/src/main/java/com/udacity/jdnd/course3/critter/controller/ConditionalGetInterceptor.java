@@ -0,0 +1,108 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.udacity.jdnd.course3.critter.config.ReadOnlyRoutingDataSource;
+import com.udacity.jdnd.course3.critter.service.AggregateVersions;
+import com.udacity.jdnd.course3.critter.service.PetsService;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Answers the handlers marked with {@link ConditionalGet} from the versions of the customers and employees.
+ *
+ * The ETag is computed from the version before the handler runs, so a change committed while the response is being
+ * built gives the response an older ETag and the next request reloads it. A request whose {@code If-None-Match}
+ * names the current ETag is answered with 304 Not Modified here, after reading only the version of the aggregate and
+ * before the handler builds any DTO. The owner of a pet is found through the pet cache, so only the first lookup of a
+ * pet reads its row.
+ *
+ * The request is pinned to the primary database until it completes, so that the response is read from the same
+ * database the version was read from, and never from a replica that has not caught up with the version yet.
+ */
+@Component
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+    /**
+     * Request attribute holding the pin of the request to the primary
+     */
+    private static final String PRIMARY_PIN = ConditionalGetInterceptor.class.getName() + ".primaryPin";
+
+    private final AggregateVersions versions;
+    private final PetsService petsService;
+
+    /**
+     * Constructor with dependencies.
+     * @param versions versions of the customers and employees
+     * @param petsService service the owners of pets are looked up with
+     */
+    public ConditionalGetInterceptor(AggregateVersions versions, PetsService petsService) {
+        this.versions = versions;
+        this.petsService = petsService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        ConditionalGet conditionalGet = ((HandlerMethod) handler).getMethodAnnotation(ConditionalGet.class);
+        if (conditionalGet == null) {
+            return true;
+        }
+        ReadOnlyRoutingDataSource.PrimaryPin pin = ReadOnlyRoutingDataSource.pinToPrimary();
+        boolean handle = false;
+        try {
+            String eTag = eTag(conditionalGet, request);
+            handle = eTag == null || !new ServletWebRequest(request, response).checkNotModified(eTag);
+        } finally {
+            if (handle) {
+                request.setAttribute(PRIMARY_PIN, pin);
+            } else {
+                pin.close();
+            }
+        }
+        return handle;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object pin = request.getAttribute(PRIMARY_PIN);
+        if (pin != null) {
+            request.removeAttribute(PRIMARY_PIN);
+            ((ReadOnlyRoutingDataSource.PrimaryPin) pin).close();
+        }
+    }
+
+    /**
+     * Gets the ETag of the current version, or null to leave the request to the handler when the path variable is
+     * not the id of an existing entity.
+     */
+    private String eTag(ConditionalGet conditionalGet, HttpServletRequest request) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        long id;
+        try {
+            id = Long.parseLong(pathVariables.get(conditionalGet.pathVariable()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        switch (conditionalGet.value()) {
+            case CUSTOMER:
+                return versions.customerETag(id);
+            case PET_OWNER:
+                try {
+                    return versions.customerETag(petsService.getPetById(id).getCustomer().getId());
+                } catch (EntityNotFoundException e) {
+                    return null;
+                }
+            default:
+                return versions.employeeETag(id);
+        }
+    }
+}
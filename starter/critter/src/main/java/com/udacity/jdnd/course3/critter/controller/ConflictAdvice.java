@@ -0,0 +1,31 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.udacity.jdnd.course3.critter.service.ScheduleConflictException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.persistence.OptimisticLockException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Answers requests that lost a race with another request with 409 Conflict: schedules booking an employee already
+ * booked on the same date, and updates of an entity changed since it was read. The request can be retried against
+ * the current state.
+ */
+@RestControllerAdvice
+public class ConflictAdvice {
+    /**
+     * Converts a conflict into the response body.
+     * @param exception the exception thrown by the service or at commit
+     * @return the error message
+     */
+    @ExceptionHandler({ScheduleConflictException.class, OptimisticLockingFailureException.class, OptimisticLockException.class})
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Map<String, String> handleConflict(RuntimeException exception) {
+        return Collections.singletonMap("message", exception.getMessage());
+    }
+}
@@ -0,0 +1,135 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.udacity.jdnd.course3.critter.dto.LongIdList;
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.entity.RecurringSchedule;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.schedule.RecurringScheduleDTO;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Converts entities to the DTOs returned by the controllers.
+ *
+ * Listing responses convert thousands of entities, so the converters use plain loops into presized lists, and the
+ * ids of related entities are collected into a {@link LongIdList} rather than a list of boxed {@code Long}s.
+ */
+@Component
+class DtoMapper {
+
+    /**
+     * Converts a pet entity to a pet DTO.
+     * @param pet the pet entity, with its owner set
+     * @return the pet DTO
+     */
+    PetDTO toPetDTO(Pet pet) {
+        PetDTO petDTO = new PetDTO();
+        petDTO.setId(pet.getId());
+        petDTO.setBirthDate(pet.getBirthDate());
+        petDTO.setName(pet.getName());
+        petDTO.setNotes(pet.getNotes());
+        petDTO.setOwnerId(pet.getCustomer().getId());
+        petDTO.setType(pet.getType());
+        return petDTO;
+    }
+
+    /**
+     * Converts a customer entity to a customer DTO.
+     * @param customer the customer entity, with its pets loaded
+     * @return the customer DTO
+     */
+    CustomerDTO toCustomerDTO(Customer customer) {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setId(customer.getId());
+        customerDTO.setName(customer.getName());
+        customerDTO.setNotes(customer.getNotes());
+        customerDTO.setPhoneNumber(customer.getPhoneNumber());
+        customerDTO.setPetIds(LongIdList.of(customer.getPets(), Pet::getId));
+        return customerDTO;
+    }
+
+    /**
+     * Converts an employee entity to an employee DTO.
+     * @param employee the employee entity, with its skills and days available loaded
+     * @return the employee DTO
+     */
+    EmployeeDTO toEmployeeDTO(Employee employee) {
+        EmployeeDTO employeeDTO = new EmployeeDTO();
+        employeeDTO.setDaysAvailable(employee.getDaysAvailable());
+        employeeDTO.setId(employee.getId());
+        employeeDTO.setName(employee.getName());
+        employeeDTO.setSkills(employee.getSkills());
+        return employeeDTO;
+    }
+
+    /**
+     * Converts a schedule entity to a schedule DTO.
+     * @param schedule the schedule entity, with its employees, pets and activities loaded
+     * @return the schedule DTO
+     */
+    ScheduleDTO toScheduleDTO(Schedule schedule) {
+        ScheduleDTO scheduleDTO = new ScheduleDTO();
+        scheduleDTO.setActivities(schedule.getActivities());
+        scheduleDTO.setDate(schedule.getDate());
+        scheduleDTO.setId(schedule.getId());
+        scheduleDTO.setEmployeeIds(LongIdList.of(schedule.getEmployees(), Employee::getId));
+        scheduleDTO.setPetIds(LongIdList.of(schedule.getPets(), Pet::getId));
+        if (schedule.getRecurringSchedule() != null) {
+            scheduleDTO.setRecurringScheduleId(schedule.getRecurringSchedule().getId());
+        }
+        return scheduleDTO;
+    }
+
+    /**
+     * Converts a recurring schedule entity to a recurring schedule DTO.
+     * @param recurringSchedule the recurring schedule entity
+     * @return the recurring schedule DTO
+     */
+    RecurringScheduleDTO toRecurringScheduleDTO(RecurringSchedule recurringSchedule) {
+        RecurringScheduleDTO recurringScheduleDTO = new RecurringScheduleDTO();
+        recurringScheduleDTO.setId(recurringSchedule.getId());
+        recurringScheduleDTO.setEmployeeIds(LongIdList.of(recurringSchedule.getEmployees(), Employee::getId));
+        recurringScheduleDTO.setPetIds(LongIdList.of(recurringSchedule.getPets(), Pet::getId));
+        recurringScheduleDTO.setActivities(recurringSchedule.getActivities());
+        recurringScheduleDTO.setStartDate(recurringSchedule.getStartDate());
+        recurringScheduleDTO.setEndDate(recurringSchedule.getEndDate());
+        recurringScheduleDTO.setIntervalWeeks(recurringSchedule.getIntervalWeeks());
+        recurringScheduleDTO.setDaysOfWeek(recurringSchedule.getDaysOfWeek());
+        recurringScheduleDTO.setSkippedDates(new TreeSet<>(recurringSchedule.getSkippedDates()));
+        return recurringScheduleDTO;
+    }
+
+    List<PetDTO> toPetDTOs(List<Pet> pets) {
+        return map(pets, this::toPetDTO);
+    }
+
+    List<CustomerDTO> toCustomerDTOs(List<Customer> customers) {
+        return map(customers, this::toCustomerDTO);
+    }
+
+    List<EmployeeDTO> toEmployeeDTOs(List<Employee> employees) {
+        return map(employees, this::toEmployeeDTO);
+    }
+
+    List<ScheduleDTO> toScheduleDTOs(List<Schedule> schedules) {
+        return map(schedules, this::toScheduleDTO);
+    }
+
+    private static <E, D> List<D> map(List<E> entities, Function<E, D> converter) {
+        List<D> dtos = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            dtos.add(converter.apply(entity));
+        }
+        return dtos;
+    }
+}
@@ -0,0 +1,27 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Answers requests referring to entities that do not exist with 404 Not Found, naming the missing ids.
+ */
+@RestControllerAdvice
+public class EntityNotFoundAdvice {
+    /**
+     * Converts a missing entity into the response body.
+     * @param exception the exception thrown by the service
+     * @return the error message
+     */
+    @ExceptionHandler(EntityNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public Map<String, String> handleEntityNotFound(EntityNotFoundException exception) {
+        return Collections.singletonMap("message", exception.getMessage());
+    }
+}
@@ -0,0 +1,71 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.udacity.jdnd.course3.critter.dto.ChangeEventsDTO;
+import com.udacity.jdnd.course3.critter.service.ChangeLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the changes to customers, pets, employees and schedules, so that consumers can follow them instead of
+ * polling the full lists.
+ *
+ * A consumer reads from the {@code next} offset of its previous response, and starts from {@code GET /events/head},
+ * or from 0 to get every event still held without being told it missed the older ones. With {@code wait}, a request
+ * finding no new event is held until one is committed or the wait is over; it does not hold a request thread
+ * meanwhile.
+ */
+@RestController
+@RequestMapping("/events")
+public class EventController {
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Value("${critter.events.max-wait-seconds:30}")
+    private int maxWaitSeconds;
+
+    @Value("${critter.events.max-limit:1000}")
+    private int maxLimit;
+
+    /**
+     * Gets the events from an offset on.
+     *
+     * @param since The offset of the first event to read, 0 for the oldest event held.
+     * @param limit The maximum number of events to return, capped at {@code critter.events.max-limit}.
+     * @param wait The number of seconds to wait for an event when there is none yet, capped at
+     *             {@code critter.events.max-wait-seconds}. 0 to answer right away.
+     * @return The events, possibly none, with the offset to read the next ones from.
+     */
+    @GetMapping
+    public DeferredResult<ChangeEventsDTO> getEvents(@RequestParam(defaultValue = "0") long since,
+                                                     @RequestParam(defaultValue = "1000") int limit,
+                                                     @RequestParam(defaultValue = "0") int wait) {
+        int boundedLimit = Math.max(1, Math.min(limit, maxLimit));
+        long waitMillis = TimeUnit.SECONDS.toMillis(Math.max(0, Math.min(wait, maxWaitSeconds)));
+        DeferredResult<ChangeEventsDTO> result = new DeferredResult<>(waitMillis == 0 ? null : waitMillis);
+        Runnable answer = () -> result.setResult(changeLog.read(since, boundedLimit));
+        if (waitMillis == 0 || !changeLog.await(since, answer)) {
+            answer.run();
+            return result;
+        }
+        result.onTimeout(answer);
+        result.onCompletion(() -> changeLog.cancel(answer));
+        return result;
+    }
+
+    /**
+     * Gets the offset the next event will get, to follow only the changes made from now on.
+     *
+     * @return The offset.
+     */
+    @GetMapping("/head")
+    public long getHead() {
+        return changeLog.head();
+    }
+}
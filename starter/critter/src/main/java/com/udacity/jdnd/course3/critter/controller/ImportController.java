@@ -0,0 +1,60 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.udacity.jdnd.course3.critter.dto.ImportReportDTO;
+import com.udacity.jdnd.course3.critter.service.ImportFormat;
+import com.udacity.jdnd.course3.critter.service.ImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Handles bulk imports of customers, pets and employees.
+ *
+ * The body is a CSV file with a header line, sent as {@code text/csv}, or an NDJSON file, sent as
+ * {@code application/x-ndjson}, with the same fields as the single-entity requests. It is read as it arrives, so files
+ * of any size can be imported. The response reports how many rows were imported and why the others were rejected.
+ */
+@RestController
+@RequestMapping("/import")
+public class ImportController {
+    @Autowired
+    private ImportService importService;
+
+    /**
+     * Imports customers.
+     *
+     * @param request The request whose body is the file to import.
+     * @return The report of the import, listing the IDs of the new customers.
+     * @throws IOException If the body cannot be read.
+     */
+    @PostMapping(value = "/customers", consumes = {ImportFormat.CSV_VALUE, ImportFormat.NDJSON_VALUE})
+    public ImportReportDTO importCustomers(HttpServletRequest request) throws IOException {
+        return importService.importCustomers(request.getInputStream(), ImportFormat.of(request.getContentType()));
+    }
+
+    /**
+     * Imports pets. Each row names the ID of an existing customer as its {@code ownerId}.
+     *
+     * @param request The request whose body is the file to import.
+     * @return The report of the import, listing the IDs of the new pets.
+     * @throws IOException If the body cannot be read.
+     */
+    @PostMapping(value = "/pets", consumes = {ImportFormat.CSV_VALUE, ImportFormat.NDJSON_VALUE})
+    public ImportReportDTO importPets(HttpServletRequest request) throws IOException {
+        return importService.importPets(request.getInputStream(), ImportFormat.of(request.getContentType()));
+    }
+
+    /**
+     * Imports employees.
+     *
+     * @param request The request whose body is the file to import.
+     * @return The report of the import, listing the IDs of the new employees.
+     * @throws IOException If the body cannot be read.
+     */
+    @PostMapping(value = "/employees", consumes = {ImportFormat.CSV_VALUE, ImportFormat.NDJSON_VALUE})
+    public ImportReportDTO importEmployees(HttpServletRequest request) throws IOException {
+        return importService.importEmployees(request.getInputStream(), ImportFormat.of(request.getContentType()));
+    }
+}
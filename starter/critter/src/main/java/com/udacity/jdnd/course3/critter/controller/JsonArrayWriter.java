@@ -0,0 +1,63 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.udacity.jdnd.course3.critter.metrics.StreamedRows;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes DTOs to a response as one JSON array, element by element as they are produced. Output goes through the
+ * generator's buffer straight to the servlet output stream, which sends it on whenever its own buffer fills, so the
+ * client starts receiving the array long before the last element is written.
+ *
+ * The array is only closed by {@link #finish}. When producing the elements fails, the caller lets the exception
+ * propagate without finishing, so a response already sent in part is cut off by the container instead of ending as a
+ * valid but truncated array.
+ */
+class JsonArrayWriter {
+    private final JsonGenerator generator;
+    private final ObjectWriter writer;
+
+    /**
+     * Starts a JSON array response.
+     * @param objectMapper the mapper used to serialize each DTO
+     * @param response the response to write to
+     * @throws IOException if the response cannot be opened
+     */
+    JsonArrayWriter(ObjectMapper objectMapper, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+        //flushing after every element would send each one to the client as a packet of its own
+        writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        generator.writeStartArray();
+        StreamedRows.started();
+    }
+
+    /**
+     * Writes one DTO as the next element of the array.
+     * @param value the DTO to write
+     */
+    void write(Object value) {
+        try {
+            writer.writeValue(generator, value);
+            StreamedRows.written();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the array once every element has been written, and ends the response.
+     * @throws IOException if the response cannot be written
+     */
+    void finish() throws IOException {
+        generator.writeEndArray();
+        generator.close();
+    }
+}
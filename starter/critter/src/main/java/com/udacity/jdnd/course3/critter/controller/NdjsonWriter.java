@@ -0,0 +1,59 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.udacity.jdnd.course3.critter.metrics.StreamedRows;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes DTOs to a response as newline-delimited JSON, one object per line, as they are produced. Nothing but the
+ * object being written is buffered, so a response of any length is written in constant memory.
+ *
+ * The response is only ended by {@link #finish}. NDJSON has no closing token, so when producing the objects fails the
+ * caller lets the exception propagate without finishing, and the container cuts off a response already sent in part
+ * instead of ending it as if every object had been written.
+ */
+class NdjsonWriter {
+    /**
+     * Media type of newline-delimited JSON
+     */
+    static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private final SequenceWriter writer;
+
+    /**
+     * Starts an NDJSON response.
+     * @param objectMapper the mapper used to serialize each DTO
+     * @param response the response to write to
+     * @throws IOException if the response cannot be opened
+     */
+    NdjsonWriter(ObjectMapper objectMapper, HttpServletResponse response) throws IOException {
+        response.setContentType(MEDIA_TYPE);
+        writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(response.getOutputStream());
+        StreamedRows.started();
+    }
+
+    /**
+     * Writes one DTO as a line of JSON.
+     * @param value the DTO to write
+     */
+    void write(Object value) {
+        try {
+            writer.write(value);
+            StreamedRows.written();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Ends the response once every DTO has been written.
+     * @throws IOException if the response cannot be written
+     */
+    void finish() throws IOException {
+        writer.close();
+    }
+}
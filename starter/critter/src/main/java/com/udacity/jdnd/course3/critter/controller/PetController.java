@@ -1,13 +1,15 @@
 package com.udacity.jdnd.course3.critter.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.pet.PetDTO;
 import com.udacity.jdnd.course3.critter.service.PetsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Handles web requests related to Pets.
@@ -18,22 +20,11 @@ public class PetController {
     @Autowired
     PetsService petsService;
 
-    /**
-     * Converts Pet entity to PetDTO.
-     *
-     * @param pet The Pet entity to be converted.
-     * @return The corresponding PetDTO object.
-     */
-    private PetDTO getPetsDTO(Pet pet) {
-        PetDTO petDTO = new PetDTO();
-        petDTO.setId(pet.getId());
-        petDTO.setBirthDate(pet.getBirthDate());
-        petDTO.setName(pet.getName());
-        petDTO.setNotes(pet.getNotes());
-        petDTO.setOwnerId(pet.getCustomer().getId());
-        petDTO.setType(pet.getType());
-        return petDTO;
-    }
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /**
      * Gets a pet by its ID.
@@ -43,7 +34,7 @@ public class PetController {
      */
     @GetMapping("/{petId}")
     public PetDTO getPet(@PathVariable long petId) {
-        return getPetsDTO(petsService.getPetById(petId));
+        return dtoMapper.toPetDTO(petsService.getPetById(petId));
     }
 
     /**
@@ -53,24 +44,46 @@ public class PetController {
      */
     @GetMapping
     public List<PetDTO> getPets(){
-        return petsService.getAllPets()
-                .stream()
-                .map(this::getPetsDTO)
-                .collect(Collectors.toList());
+        return dtoMapper.toPetDTOs(petsService.getAllPets());
+    }
+
+    /**
+     * Gets one page of pets, ordered by ID. Pass the ID of the last pet of a page as {@code after} to get the next one.
+     *
+     * @param after The ID of the last pet of the previous page, 0 for the first page.
+     * @param limit The maximum number of pets to return.
+     * @return A list of PetDTO objects.
+     */
+    @GetMapping(params = "limit")
+    public List<PetDTO> getPetsPage(@RequestParam(defaultValue = "0") long after, @RequestParam int limit) {
+        return dtoMapper.toPetDTOs(petsService.getPetsAfter(after, limit));
+    }
+
+    /**
+     * Streams all pets as newline-delimited JSON, writing each one as it is read.
+     *
+     * @param after The ID to start after, 0 for all pets.
+     * @param response The response to write to.
+     * @throws IOException If the response cannot be written.
+     */
+    @GetMapping(params = "format=ndjson", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamPets(@RequestParam(defaultValue = "0") long after, HttpServletResponse response) throws IOException {
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, response);
+        petsService.forEachPet(after, pet -> writer.write(dtoMapper.toPetDTO(pet)));
+        writer.finish();
     }
 
     /**
-     * Gets all pets of a particular customer.
+     * Gets all pets of a particular customer. The response carries the ETag of the customer's version, and is
+     * answered with 304 Not Modified while it is unchanged.
      *
      * @param ownerId The ID of the customer whose pets are to be retrieved.
      * @return A list of PetDTO objects.
      */
     @GetMapping("/owner/{ownerId}")
+    @ConditionalGet(value = ConditionalGet.Key.CUSTOMER, pathVariable = "ownerId")
     public List<PetDTO> getPetsByOwner(@PathVariable long ownerId) {
-        return petsService.getPetsByCustomerId(ownerId)
-                .stream()
-                .map(this::getPetsDTO)
-                .collect(Collectors.toList());
+        return dtoMapper.toPetDTOs(petsService.getPetsByCustomerId(ownerId));
     }
 
     /**
@@ -86,6 +99,6 @@ public class PetController {
         pet.setName(petDTO.getName());
         pet.setBirthDate(petDTO.getBirthDate());
         pet.setNotes(petDTO.getNotes());
-        return getPetsDTO(petsService.savePet(pet, petDTO.getOwnerId()));
+        return dtoMapper.toPetDTO(petsService.savePet(pet, petDTO.getOwnerId()));
     }
 }
\ No newline at end of file
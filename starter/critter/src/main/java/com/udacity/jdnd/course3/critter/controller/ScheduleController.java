@@ -1,42 +1,39 @@
 package com.udacity.jdnd.course3.critter.controller;
 
-import com.udacity.jdnd.course3.critter.entity.Employee;
-import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udacity.jdnd.course3.critter.entity.RecurringSchedule;
 import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.schedule.RecurringScheduleDTO;
 import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
 import com.udacity.jdnd.course3.critter.service.SchedulesService;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import javax.transaction.Transactional;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * Handles web requests related to Schedules.
+ * Handles web requests related to Schedules. Each request runs in one transaction, which is read-only unless the
+ * request creates schedules.
  */
 @RestController
-@Transactional
+@Transactional(readOnly = true)
 @RequestMapping("/schedule")
 public class ScheduleController {
     @Autowired
     private SchedulesService schedulesService;
 
-    /**
-     * Converts a Schedule entity to a ScheduleDTO.
-     *
-     * @param schedule the Schedule entity to convert
-     * @return the ScheduleDTO created from the Schedule entity
-     */
-    private ScheduleDTO getScheduleDTO(Schedule schedule) {
-        ScheduleDTO scheduleDTO = new ScheduleDTO();
-        scheduleDTO.setActivities(schedule.getActivities());
-        scheduleDTO.setDate(schedule.getDate());
-        scheduleDTO.setId(schedule.getId());
-        scheduleDTO.setEmployeeIds(schedule.getEmployees().stream().map(Employee::getId).collect(Collectors.toList()));
-        scheduleDTO.setPetIds(schedule.getPets().stream().map(Pet::getId).collect(Collectors.toList()));
-        return scheduleDTO;
-    }
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /**
      * Creates a new Schedule.
@@ -45,65 +42,220 @@ public class ScheduleController {
      * @return the created ScheduleDTO
      */
     @PostMapping
+    @Transactional
     public ScheduleDTO createSchedule(@RequestBody ScheduleDTO scheduleDTO) {
         Schedule schedule = new Schedule();
         schedule.setDate(scheduleDTO.getDate());
         schedule.setActivities(scheduleDTO.getActivities());
-        return getScheduleDTO(schedulesService.saveSchedule(schedule, scheduleDTO.getEmployeeIds(), scheduleDTO.getPetIds()));
+        return dtoMapper.toScheduleDTO(schedulesService.saveSchedule(schedule, scheduleDTO.getEmployeeIds(), scheduleDTO.getPetIds()));
+    }
+
+    /**
+     * Creates many Schedules in one request.
+     *
+     * @param scheduleDTOs the ScheduleDTOs containing the new schedules' information
+     * @return the created ScheduleDTOs, in the same order as the request
+     */
+    @PostMapping("/batch")
+    @Transactional
+    public List<ScheduleDTO> createSchedules(@RequestBody List<ScheduleDTO> scheduleDTOs) {
+        List<Schedule> schedules = scheduleDTOs.stream().map(scheduleDTO -> {
+            Schedule schedule = new Schedule();
+            schedule.setDate(scheduleDTO.getDate());
+            schedule.setActivities(scheduleDTO.getActivities());
+            return schedule;
+        }).collect(Collectors.toList());
+        List<List<Long>> employeeIds = scheduleDTOs.stream().map(ScheduleDTO::getEmployeeIds).collect(Collectors.toList());
+        List<List<Long>> petIds = scheduleDTOs.stream().map(ScheduleDTO::getPetIds).collect(Collectors.toList());
+        return dtoMapper.toScheduleDTOs(schedulesService.saveSchedules(schedules, employeeIds, petIds));
+    }
+
+    /**
+     * Creates a recurring schedule. Its occurrences are not stored, but are returned with the schedules of its
+     * employees and pets.
+     *
+     * @param recurringScheduleDTO the RecurringScheduleDTO containing the recurrence rule and the schedule information
+     * @return the created RecurringScheduleDTO
+     */
+    @PostMapping("/recurring")
+    @Transactional
+    public RecurringScheduleDTO createRecurringSchedule(@RequestBody RecurringScheduleDTO recurringScheduleDTO) {
+        RecurringSchedule recurringSchedule = new RecurringSchedule();
+        recurringSchedule.setActivities(recurringScheduleDTO.getActivities());
+        recurringSchedule.setStartDate(recurringScheduleDTO.getStartDate());
+        recurringSchedule.setEndDate(recurringScheduleDTO.getEndDate());
+        recurringSchedule.setIntervalWeeks(recurringScheduleDTO.getIntervalWeeks());
+        recurringSchedule.setDaysOfWeek(recurringScheduleDTO.getDaysOfWeek());
+        if (recurringScheduleDTO.getSkippedDates() != null) {
+            recurringSchedule.getSkippedDates().addAll(recurringScheduleDTO.getSkippedDates());
+        }
+        return dtoMapper.toRecurringScheduleDTO(schedulesService.saveRecurringSchedule(recurringSchedule,
+                recurringScheduleDTO.getEmployeeIds(), recurringScheduleDTO.getPetIds()));
+    }
+
+    /**
+     * Cancels occurrences of a recurring schedule. To change an occurrence instead, cancel it and create a schedule
+     * on its date.
+     *
+     * @param recurringScheduleId the ID of the recurring schedule
+     * @param dates the dates of the occurrences to cancel
+     * @return the updated RecurringScheduleDTO
+     */
+    @PostMapping("/recurring/{recurringScheduleId}/skip")
+    @Transactional
+    public RecurringScheduleDTO skipOccurrences(@PathVariable long recurringScheduleId, @RequestBody List<LocalDate> dates) {
+        return dtoMapper.toRecurringScheduleDTO(schedulesService.skipOccurrences(recurringScheduleId, dates));
     }
 
     /**
-     * Retrieves all schedules.
+     * Retrieves all schedules, writing each one to the response as it comes off the database cursor. Neither the
+     * schedules nor the response are held in memory as a whole, whatever the number of schedules. If reading fails
+     * part way, the array is left open and the connection is cut off, so the client cannot take what it received for
+     * the whole list.
      *
-     * @return a List of all ScheduleDTOs
+     * @param response the response to write to
+     * @throws IOException if the response cannot be written
      */
     @GetMapping
-    public List<ScheduleDTO> getAllSchedules() {
-        return schedulesService.getAllSchedules()
-                .stream()
-                .map(this::getScheduleDTO)
-                .collect(Collectors.toList());
+    public void streamAllSchedules(HttpServletResponse response) throws IOException {
+        JsonArrayWriter writer = new JsonArrayWriter(objectMapper, response);
+        schedulesService.streamAllSchedules(writer::write);
+        writer.finish();
     }
 
     /**
-     * Retrieves all schedules associated with a specific pet.
+     * Retrieves one page of schedules, ordered by ID. Pass the ID of the last schedule of a page as {@code after}
+     * to get the next one.
+     *
+     * @param after the ID of the last schedule of the previous page, 0 for the first page
+     * @param limit the maximum number of schedules to return
+     * @return a List of ScheduleDTOs
+     */
+    @GetMapping(params = "limit")
+    public List<ScheduleDTO> getSchedulesPage(@RequestParam(defaultValue = "0") long after, @RequestParam int limit) {
+        return dtoMapper.toScheduleDTOs(schedulesService.getSchedulesAfter(after, limit));
+    }
+
+    /**
+     * Streams all schedules as newline-delimited JSON, writing each one as it is read.
+     *
+     * @param after the ID to start after, 0 for all schedules
+     * @param response the response to write to
+     * @throws IOException if the response cannot be written
+     */
+    @GetMapping(params = "format=ndjson", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamSchedules(@RequestParam(defaultValue = "0") long after, HttpServletResponse response) throws IOException {
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, response);
+        schedulesService.forEachSchedule(after, schedule -> writer.write(dtoMapper.toScheduleDTO(schedule)));
+        writer.finish();
+    }
+
+    /**
+     * Retrieves the schedules within a date range.
+     *
+     * @param from the first date of the range, in ISO format
+     * @param to the last date of the range, in ISO format
+     * @param activity the activity the schedules must include, or any activity if omitted
+     * @return a List of ScheduleDTOs ordered by date
+     */
+    @GetMapping(params = {"from", "to"})
+    public List<ScheduleDTO> getSchedulesBetween(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                 @RequestParam(required = false) EmployeeSkill activity) {
+        return dtoMapper.toScheduleDTOs(schedulesService.getSchedulesBetween(from, to, activity));
+    }
+
+    /**
+     * Retrieves all schedules associated with a specific pet, followed by the occurrences of its recurring schedules.
+     * Recurring schedules without an end date are expanded up to {@code critter.recurrence.horizon-days} from today.
      *
      * @param petId the ID of the pet
      * @return a List of all ScheduleDTOs associated with the pet
      */
     @GetMapping("/pet/{petId}")
     public List<ScheduleDTO> getScheduleForPet(@PathVariable long petId) {
-        return schedulesService.getAllSchedulesForPet(petId)
-                .stream()
-                .map(this::getScheduleDTO)
-                .collect(Collectors.toList());
+        return dtoMapper.toScheduleDTOs(schedulesService.getAllSchedulesForPet(petId));
     }
 
     /**
-     * Retrieves all schedules associated with a specific employee.
+     * Retrieves the schedules of a specific pet within a date range, with the occurrences of its recurring schedules.
+     *
+     * @param petId the ID of the pet
+     * @param from the first date of the range, in ISO format
+     * @param to the last date of the range, in ISO format
+     * @param activity the activity the schedules must include, or any activity if omitted
+     * @return a List of ScheduleDTOs ordered by date
+     */
+    @GetMapping(value = "/pet/{petId}", params = {"from", "to"})
+    public List<ScheduleDTO> getScheduleForPetBetween(@PathVariable long petId,
+                                                      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                      @RequestParam(required = false) EmployeeSkill activity) {
+        return dtoMapper.toScheduleDTOs(schedulesService.getSchedulesForPetBetween(petId, from, to, activity));
+    }
+
+    /**
+     * Retrieves all schedules associated with a specific employee, followed by the occurrences of their recurring
+     * schedules. Recurring schedules without an end date are expanded up to {@code critter.recurrence.horizon-days}
+     * from today.
      *
      * @param employeeId the ID of the employee
      * @return a List of all ScheduleDTOs associated with the employee
      */
     @GetMapping("/employee/{employeeId}")
     public List<ScheduleDTO> getScheduleForEmployee(@PathVariable long employeeId) {
-        return schedulesService.getAllSchedulesForEmployee(employeeId)
-                .stream()
-                .map(this::getScheduleDTO)
-                .collect(Collectors.toList());
+        return dtoMapper.toScheduleDTOs(schedulesService.getAllSchedulesForEmployee(employeeId));
+    }
+
+    /**
+     * Retrieves the schedules of a specific employee within a date range, with the occurrences of their recurring
+     * schedules and the ETag of the employee's version. Unlike the list without a range, which grows as today moves
+     * on, it only changes with the employee's schedules, so it is answered with 304 Not Modified while they are.
+     *
+     * @param employeeId the ID of the employee
+     * @param from the first date of the range, in ISO format
+     * @param to the last date of the range, in ISO format
+     * @param activity the activity the schedules must include, or any activity if omitted
+     * @return a List of ScheduleDTOs ordered by date
+     */
+    @GetMapping(value = "/employee/{employeeId}", params = {"from", "to"})
+    @ConditionalGet(value = ConditionalGet.Key.EMPLOYEE, pathVariable = "employeeId")
+    public List<ScheduleDTO> getScheduleForEmployeeBetween(@PathVariable long employeeId,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                           @RequestParam(required = false) EmployeeSkill activity) {
+        return dtoMapper.toScheduleDTOs(schedulesService.getSchedulesForEmployeeBetween(employeeId, from, to, activity));
     }
 
     /**
-     * Retrieves all schedules associated with a specific customer.
+     * Retrieves all schedules associated with a specific customer. The response carries the ETag of the customer's
+     * version, and is answered with 304 Not Modified while it is unchanged.
      *
      * @param customerId the ID of the customer
      * @return a List of all ScheduleDTOs associated with the customer's pets
      */
     @GetMapping("/customer/{customerId}")
+    @ConditionalGet(value = ConditionalGet.Key.CUSTOMER, pathVariable = "customerId")
     public List<ScheduleDTO> getScheduleForCustomer(@PathVariable long customerId) {
-        return schedulesService.getAllScheduleForCustomer(customerId)
-                .stream()
-                .map(this::getScheduleDTO)
-                .collect(Collectors.toList());
+        return dtoMapper.toScheduleDTOs(schedulesService.getAllScheduleForCustomer(customerId));
+    }
+
+    /**
+     * Retrieves the schedules of a specific customer's pets within a date range, with the ETag of the customer's
+     * version.
+     *
+     * @param customerId the ID of the customer
+     * @param from the first date of the range, in ISO format
+     * @param to the last date of the range, in ISO format
+     * @param activity the activity the schedules must include, or any activity if omitted
+     * @return a List of ScheduleDTOs ordered by date
+     */
+    @GetMapping(value = "/customer/{customerId}", params = {"from", "to"})
+    @ConditionalGet(value = ConditionalGet.Key.CUSTOMER, pathVariable = "customerId")
+    public List<ScheduleDTO> getScheduleForCustomerBetween(@PathVariable long customerId,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                           @RequestParam(required = false) EmployeeSkill activity) {
+        return dtoMapper.toScheduleDTOs(schedulesService.getSchedulesForCustomerBetween(customerId, from, to, activity));
     }
 }
\ No newline at end of file
@@ -1,17 +1,22 @@
 package com.udacity.jdnd.course3.critter.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.udacity.jdnd.course3.critter.entity.Customer;
 import com.udacity.jdnd.course3.critter.entity.Employee;
-import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.service.CustomerService;
 import com.udacity.jdnd.course3.critter.service.EmployeeService;
 import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeAssignmentDTO;
 import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDemandDTO;
 import com.udacity.jdnd.course3.critter.user.EmployeeRequestDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.DayOfWeek;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -38,21 +43,16 @@ public class UserController {
     private EmployeeService employeeService;
 
     /**
-     * Converts a customer entity to a customer DTO.
-     *
-     * @param customer The customer entity to convert.
-     * @return The customer DTO representing the customer entity.
+     * Mapper used to convert entities to DTOs.
      */
-    private CustomerDTO getCustomerDTO(Customer customer){
-        CustomerDTO customerDTO = new CustomerDTO();
-        customerDTO.setId(customer.getId());
-        customerDTO.setName(customer.getName());
-        customerDTO.setNotes(customer.getNotes());
-        customerDTO.setPhoneNumber(customer.getPhoneNumber());
-        List<Long> petIds = customer.getPets().stream().map(Pet::getId).collect(Collectors.toList());
-        customerDTO.setPetIds(petIds);
-        return customerDTO;
-    }
+    @Autowired
+    private DtoMapper dtoMapper;
+
+    /**
+     * Mapper used to write streamed responses.
+     */
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /**
      * Gets all customers from the database.
@@ -61,36 +61,47 @@ public class UserController {
      */
     @GetMapping("/customer")
     public List<CustomerDTO> getAllCustomers(){
-        return customerService.getAllCustomers()
-                .stream()
-                .map(this::getCustomerDTO)
-                .collect(Collectors.toList());
+        return dtoMapper.toCustomerDTOs(customerService.getAllCustomers());
     }
 
     /**
-     * Gets the customer that owns the specified pet from the database.
+     * Gets one page of customers, ordered by ID. Pass the ID of the last customer of a page as {@code after} to get
+     * the next one.
      *
-     * @param petId The ID of the pet whose owner to retrieve.
-     * @return The customer DTO representing the owner of the specified pet.
+     * @param after The ID of the last customer of the previous page, 0 for the first page.
+     * @param limit The maximum number of customers to return.
+     * @return A list of customer DTOs.
      */
-    @GetMapping("/customer/pet/{petId}")
-    public CustomerDTO getOwnerByPet(@PathVariable long petId){
-        return getCustomerDTO(customerService.getCustomerByPetId(petId));
+    @GetMapping(value = "/customer", params = "limit")
+    public List<CustomerDTO> getCustomersPage(@RequestParam(defaultValue = "0") long after, @RequestParam int limit) {
+        return dtoMapper.toCustomerDTOs(customerService.getCustomersAfter(after, limit));
     }
 
     /**
-     * Converts an employee entity to an employee DTO.
+     * Streams all customers as newline-delimited JSON, writing each one as it is read.
      *
-     * @param employee The employee entity to convert.
-     * @return The employee DTO representing the employee entity.
+     * @param after The ID to start after, 0 for all customers.
+     * @param response The response to write to.
+     * @throws IOException If the response cannot be written.
      */
-    private EmployeeDTO getEmployeeDTO(Employee employee) {
-        EmployeeDTO employeeDTO = new EmployeeDTO();
-        employeeDTO.setDaysAvailable(employee.getDaysAvailable());
-        employeeDTO.setId(employee.getId());
-        employeeDTO.setName(employee.getName());
-        employeeDTO.setSkills(employee.getSkills());
-        return employeeDTO;
+    @GetMapping(value = "/customer", params = "format=ndjson", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamCustomers(@RequestParam(defaultValue = "0") long after, HttpServletResponse response) throws IOException {
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, response);
+        customerService.forEachCustomer(after, customer -> writer.write(dtoMapper.toCustomerDTO(customer)));
+        writer.finish();
+    }
+
+    /**
+     * Gets the customer that owns the specified pet from the database. The response carries the ETag of the owner's
+     * version, and is answered with 304 Not Modified while it is unchanged.
+     *
+     * @param petId The ID of the pet whose owner to retrieve.
+     * @return The customer DTO representing the owner of the specified pet.
+     */
+    @GetMapping("/customer/pet/{petId}")
+    @ConditionalGet(value = ConditionalGet.Key.PET_OWNER, pathVariable = "petId")
+    public CustomerDTO getOwnerByPet(@PathVariable long petId){
+        return dtoMapper.toCustomerDTO(customerService.getCustomerByPetId(petId));
     }
 
     /**
@@ -101,7 +112,7 @@ public class UserController {
      */
     @PostMapping("/employee/{employeeId}")
     public EmployeeDTO getEmployee(@PathVariable long employeeId) {
-        return getEmployeeDTO(employeeService.getEmployeeById(employeeId));
+        return dtoMapper.toEmployeeDTO(employeeService.getEmployeeById(employeeId));
     }
 
     /**
@@ -128,7 +139,7 @@ public class UserController {
         customer.setPhoneNumber(customerDTO.getPhoneNumber());
         customer.setNotes(customerDTO.getNotes());
         List<Long> petIds = customerDTO.getPetIds();
-        return getCustomerDTO(customerService.saveCustomer(customer, petIds));
+        return dtoMapper.toCustomerDTO(customerService.saveCustomer(customer, petIds));
     }
 
     /**
@@ -143,7 +154,7 @@ public class UserController {
         employee.setName(employeeDTO.getName());
         employee.setDaysAvailable(employeeDTO.getDaysAvailable());
         employee.setSkills(employeeDTO.getSkills());
-        return getEmployeeDTO(employeeService.saveEmployee(employee));
+        return dtoMapper.toEmployeeDTO(employeeService.saveEmployee(employee));
     }
 
     /**
@@ -154,9 +165,31 @@ public class UserController {
      */
     @GetMapping("/employee/availability")
     public List<EmployeeDTO> findEmployeesForService(@RequestBody EmployeeRequestDTO employeeDTO) {
-        return employeeService.getEmployeesForService(employeeDTO.getDate(), employeeDTO.getSkills())
-                .stream()
-                .map(this::getEmployeeDTO)
-                .collect(Collectors.toList());
+        return dtoMapper.toEmployeeDTOs(employeeService.getEmployeesForService(employeeDTO.getDate(), employeeDTO.getSkills()));
+    }
+
+    /**
+     * Plans employees for many slots of demand at once, without booking them. No employee is planned for two slots
+     * on the same date, and slots that cannot be filled completely get as many employees as are available.
+     *
+     * @param demand the date, required skills and headcount of each slot
+     * @return the employees planned for each slot, in the same order as the request
+     */
+    @PostMapping("/employee/availability/plan")
+    public List<EmployeeAssignmentDTO> planAvailability(@RequestBody List<EmployeeDemandDTO> demand) {
+        List<List<Long>> plan = employeeService.planAvailability(
+                demand.stream().map(EmployeeDemandDTO::getDate).collect(Collectors.toList()),
+                demand.stream().map(EmployeeDemandDTO::getSkills).collect(Collectors.toList()),
+                demand.stream().map(EmployeeDemandDTO::getHeadcount).collect(Collectors.toList()));
+        List<EmployeeAssignmentDTO> assignments = new ArrayList<>(demand.size());
+        for (int i = 0; i < demand.size(); i++) {
+            EmployeeAssignmentDTO assignment = new EmployeeAssignmentDTO();
+            assignment.setDate(demand.get(i).getDate());
+            assignment.setSkills(demand.get(i).getSkills());
+            assignment.setHeadcount(demand.get(i).getHeadcount());
+            assignment.setEmployeeIds(plan.get(i));
+            assignments.add(assignment);
+        }
+        return assignments;
     }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.udacity.jdnd.course3.critter.dto;
+
+import java.time.Instant;
+
+/**
+ * A committed change to an entity, as streamed by {@code GET /events}. Only names the entity: consumers that need its
+ * new state read it by id. Does not map to the database directly.
+ */
+public class ChangeEventDTO {
+    /**
+     * The kinds of entity whose changes are streamed
+     */
+    public enum Entity {
+        CUSTOMER, PET, EMPLOYEE, SCHEDULE, RECURRING_SCHEDULE
+    }
+
+    /**
+     * The kinds of change
+     */
+    public enum Action {
+        CREATED, UPDATED
+    }
+
+    private final long offset;
+    private final Entity entity;
+    private final Action action;
+    private final long id;
+    private final Instant time;
+
+    public ChangeEventDTO(long offset, Entity entity, Action action, long id, Instant time) {
+        this.offset = offset;
+        this.entity = entity;
+        this.action = action;
+        this.id = id;
+        this.time = time;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,46 @@
+package com.udacity.jdnd.course3.critter.dto;
+
+import java.util.List;
+
+/**
+ * A batch of change events read from an offset. Does not map to the database directly.
+ *
+ * The next batch is read from {@code next}. When {@code missed} is set, events after the requested offset are no
+ * longer held, having been evicted or lost in a restart, and a consumer must read the current state in full before
+ * following the events again.
+ */
+public class ChangeEventsDTO {
+    private List<ChangeEventDTO> events;
+    private long next;
+    private boolean missed;
+
+    public ChangeEventsDTO(List<ChangeEventDTO> events, long next, boolean missed) {
+        this.events = events;
+        this.next = next;
+        this.missed = missed;
+    }
+
+    public List<ChangeEventDTO> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<ChangeEventDTO> events) {
+        this.events = events;
+    }
+
+    public long getNext() {
+        return next;
+    }
+
+    public void setNext(long next) {
+        this.next = next;
+    }
+
+    public boolean isMissed() {
+        return missed;
+    }
+
+    public void setMissed(boolean missed) {
+        this.missed = missed;
+    }
+}
@@ -0,0 +1,94 @@
+package com.udacity.jdnd.course3.critter.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Does not map to the database directly.
+ *
+ * The ids of the imported entities are listed in the order of their rows, with rejected rows left out, so walking
+ * the file while skipping the lines listed in the errors pairs every other row with its id.
+ */
+public class ImportReportDTO {
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private List<Long> ids;
+    private List<RowError> errors;
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public void setRowsRead(long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public void setRowsImported(long rowsImported) {
+        this.rowsImported = rowsImported;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public void setRowsRejected(long rowsRejected) {
+        this.rowsRejected = rowsRejected;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Gets the errors of the rejected rows, in line order. Only the first errors are listed when there are many,
+     * see {@link #getRowsRejected()} for the total.
+     * @return the row errors
+     */
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RowError> errors) {
+        this.errors = errors;
+    }
+
+    /**
+     * Why one row of the file was rejected.
+     */
+    public static class RowError {
+        private long line;
+        private String message;
+
+        public RowError() {
+        }
+
+        public RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public void setLine(long line) {
+            this.line = line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.udacity.jdnd.course3.critter.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable list of ids backed by a primitive {@code long[]}.
+ *
+ * DTOs expose their ids as {@code List<Long>}, but building one of these from entities allocates a single array
+ * instead of a boxed {@code Long} per id, and {@link LongIdListSerializer} writes the array to JSON without boxing
+ * either. Ids are only boxed when read through the {@link List} methods, so use {@link #getLong(int)} where it
+ * matters.
+ */
+@JsonSerialize(using = LongIdListSerializer.class)
+public final class LongIdList extends AbstractList<Long> implements RandomAccess {
+    private static final LongIdList EMPTY = new LongIdList(new long[0]);
+
+    private final long[] ids;
+
+    private LongIdList(long[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Creates a list holding a copy of the given ids.
+     * @param ids the ids
+     * @return the id list
+     */
+    public static LongIdList of(long... ids) {
+        return ids.length == 0 ? EMPTY : new LongIdList(ids.clone());
+    }
+
+    /**
+     * Creates a list of the ids of some entities, in iteration order.
+     * @param entities the entities, may be null
+     * @param id function reading the id of an entity
+     * @param <E> the entity type
+     * @return the id list, empty if there are no entities
+     */
+    public static <E> LongIdList of(Collection<E> entities, ToLongFunction<? super E> id) {
+        if (entities == null || entities.isEmpty()) {
+            return EMPTY;
+        }
+        long[] ids = new long[entities.size()];
+        if (entities instanceof List && entities instanceof RandomAccess) {
+            List<E> list = (List<E>) entities;
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = id.applyAsLong(list.get(i));
+            }
+        } else {
+            int i = 0;
+            for (E entity : entities) {
+                ids[i++] = id.applyAsLong(entity);
+            }
+        }
+        return new LongIdList(ids);
+    }
+
+    /**
+     * Gets an id without boxing it.
+     * @param index the position of the id
+     * @return the id
+     */
+    public long getLong(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Gets the ids as a new array.
+     * @return a copy of the ids
+     */
+    public long[] toLongArray() {
+        return ids.clone();
+    }
+
+    @Override
+    public Long get(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof Long) {
+            long id = (Long) o;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof LongIdList) {
+            return Arrays.equals(ids, ((LongIdList) o).ids);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Gets the backing array, which must not be modified, for the serializer.
+     */
+    long[] array() {
+        return ids;
+    }
+
+    /**
+     * Collects ids one at a time into a growable array. A builder can be cleared and reused, so reading many rows
+     * only allocates the arrays of the lists it builds.
+     */
+    public static final class Builder {
+        private long[] ids = new long[8];
+        private int size;
+
+        /**
+         * Appends an id.
+         * @param id the id
+         * @return this builder
+         */
+        public Builder add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+            return this;
+        }
+
+        /**
+         * Creates a list of the ids added so far.
+         * @return the id list
+         */
+        public LongIdList build() {
+            return size == 0 ? EMPTY : new LongIdList(Arrays.copyOf(ids, size));
+        }
+
+        /**
+         * Removes every id, keeping the array for the next list.
+         */
+        public void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.udacity.jdnd.course3.critter.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link LongIdList} as a JSON array of numbers straight from its backing array.
+ */
+public class LongIdListSerializer extends StdSerializer<LongIdList> {
+
+    public LongIdListSerializer() {
+        super(LongIdList.class);
+    }
+
+    @Override
+    public void serialize(LongIdList value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        long[] ids = value.array();
+        gen.writeArray(ids, 0, ids.length);
+    }
+
+    @Override
+    public boolean isEmpty(SerializerProvider provider, LongIdList value) {
+        return value.isEmpty();
+    }
+}
@@ -1,11 +1,15 @@
 package com.udacity.jdnd.course3.critter.entity;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.Hibernate;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Represents a customer in the system.
@@ -15,20 +19,44 @@ import java.util.List;
 @NoArgsConstructor
 public class Customer implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+    @SequenceGenerator(name = "customer_seq", sequenceName = "customer_seq", allocationSize = 50)
     private long id;
     private String phoneNumber;
     private String notes;
     private String name;
 
-    @OneToMany(targetEntity = Pet.class)
-    private List<Pet> pets;
+    /**
+     * Version of the customer's aggregate: the customer, their pets and their schedules. It is bumped by
+     * {@link com.udacity.jdnd.course3.critter.service.AggregateVersions} in every transaction that changes the
+     * aggregate, and never written from this field.
+     */
+    @Column(nullable = false, updatable = false)
+    private long aggregateVersion;
+
+    /**
+     * The customer's pets, in id order. Ownership is stored on the pet side only, in {@code pet.customer_id}, so this
+     * set is never written to the database.
+     */
+    @OneToMany(targetEntity = Pet.class, mappedBy = "customer")
+    @OrderBy("id")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Set<Pet> pets = new LinkedHashSet<>();
 
     /**
-     * Adds a pet belonging to this customer.
+     * Makes this customer the owner of a pet. Pet sets that have not been loaded are left alone, since the owner is
+     * stored on the pet, so adding a pet never reads the pets the customer already has.
      * @param pet the pet to insert
      */
     public void addPet(Pet pet) {
-        pets.add(pet);
+        Customer previous = pet.getCustomer();
+        if (previous != null && previous != this && Hibernate.isInitialized(previous.getPets())) {
+            previous.getPets().remove(pet);
+        }
+        pet.setCustomer(this);
+        if (Hibernate.isInitialized(pets)) {
+            pets.add(pet);
+        }
     }
 }
\ No newline at end of file
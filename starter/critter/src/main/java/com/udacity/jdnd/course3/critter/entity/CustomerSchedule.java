@@ -0,0 +1,56 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Denormalized link between a customer and a schedule that involves any of the customer's pets, copied with the
+ * schedule's date. The rows are written when schedules are saved and rewritten when a scheduled pet moves to another
+ * owner, so the schedules of a customer are one range read of the (customer_id, date) index instead of a join through
+ * every pet the customer owns.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(indexes = @Index(name = "idx_customer_schedule_customer_date", columnList = "customer_id, date, schedule_id"),
+        uniqueConstraints = @UniqueConstraint(columnNames = {"customer_id", "schedule_id"}))
+public class CustomerSchedule implements Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_schedule_seq")
+    @SequenceGenerator(name = "customer_schedule_seq", sequenceName = "customer_schedule_seq", allocationSize = 50)
+    private long id;
+
+    /**
+     * ID of the customer owning at least one pet of the schedule
+     */
+    @Column(name = "customer_id", nullable = false)
+    private long customerId;
+
+    /**
+     * The schedule
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "schedule_id")
+    private Schedule schedule;
+
+    /**
+     * Date of the schedule, copied so that the index can return the schedules of a customer in date order
+     */
+    @Column(nullable = false)
+    private LocalDate date;
+
+    /**
+     * Links a customer to a schedule.
+     * @param customerId the id of the customer
+     * @param schedule the schedule involving the customer's pets
+     */
+    public CustomerSchedule(long customerId, Schedule schedule) {
+        this.customerId = customerId;
+        this.schedule = schedule;
+        this.date = schedule.getDate();
+    }
+}
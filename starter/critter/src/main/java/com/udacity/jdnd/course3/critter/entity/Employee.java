@@ -18,19 +18,38 @@ import java.util.Set;
 @NoArgsConstructor
 public class Employee implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_seq")
+    @SequenceGenerator(name = "employee_seq", sequenceName = "employee_seq", allocationSize = 50)
     private long id;
+
+    /**
+     * Version of the employee, checked when it is updated so that a concurrent change to the skills or days
+     * available is not overwritten
+     */
+    @Version
+    private long version;
+
+    /**
+     * Version of the employee's aggregate: the employee and their schedules and recurring schedules. It is bumped by
+     * {@link com.udacity.jdnd.course3.critter.service.AggregateVersions} in every transaction that changes the
+     * aggregate, and never written from this field, so bumping it does not conflict with {@link #version}.
+     */
+    @Column(nullable = false, updatable = false)
+    private long aggregateVersion;
+
     private String name;
 
     /**
-     * The employee's set of skills
+     * The employee's set of skills, stored as a bitmask
      */
-    @ElementCollection
+    @Convert(converter = EnumSetConverter.EmployeeSkills.class)
+    @Column(nullable = false)
     private Set<EmployeeSkill> skills;
 
     /**
-     * The employee's set of days available for work
+     * The employee's set of days available for work, stored as a bitmask
      */
-    @ElementCollection
+    @Convert(converter = EnumSetConverter.DaysOfWeek.class)
+    @Column(nullable = false)
     private Set<DayOfWeek> daysAvailable;
 }
\ No newline at end of file
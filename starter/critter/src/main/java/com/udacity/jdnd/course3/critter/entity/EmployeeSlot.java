@@ -0,0 +1,54 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Claim of an employee's date by a schedule. The unique constraint on the employee and date makes the database
+ * reject a second schedule for an employee on the same date, including one booked through another instance of the
+ * application, without locking anything but the claimed slot.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_employee_slot_employee_date", columnNames = {"employee_id", "date"}))
+public class EmployeeSlot implements Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_slot_seq")
+    @SequenceGenerator(name = "employee_slot_seq", sequenceName = "employee_slot_seq", allocationSize = 50)
+    private long id;
+
+    /**
+     * ID of the booked employee
+     */
+    @Column(name = "employee_id", nullable = false)
+    private long employeeId;
+
+    /**
+     * Date the employee is booked on
+     */
+    @Column(nullable = false)
+    private LocalDate date;
+
+    /**
+     * The schedule holding the slot
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "schedule_id")
+    private Schedule schedule;
+
+    /**
+     * Claims the date of a schedule for one of its employees.
+     * @param employeeId the id of the employee
+     * @param schedule the schedule the employee is booked on
+     */
+    public EmployeeSlot(long employeeId, Schedule schedule) {
+        this.employeeId = employeeId;
+        this.schedule = schedule;
+        this.date = schedule.getDate();
+    }
+}
@@ -0,0 +1,88 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+
+import javax.persistence.AttributeConverter;
+import java.time.DayOfWeek;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Stores a set of enum constants as an integer column with one bit per constant, bit {@code i} standing for the
+ * constant with ordinal {@code i}. A set is then read with its entity rather than from a table of its own, and
+ * queries test it with {@code bitand(column, :mask) = :mask} instead of joining that table.
+ *
+ * The bits are tied to the declaration order of the constants, so new constants must be added at the end of the enum,
+ * and an enum can have at most 31 of them.
+ * @param <E> the enum type
+ */
+public abstract class EnumSetConverter<E extends Enum<E>> implements AttributeConverter<Set<E>, Integer> {
+    private final Class<E> type;
+    private final E[] constants;
+
+    protected EnumSetConverter(Class<E> type) {
+        this.type = type;
+        this.constants = type.getEnumConstants();
+    }
+
+    /**
+     * Computes the mask of some constants, as stored in the column.
+     * @param values the constants, may be null
+     * @return the mask, 0 when there are none
+     */
+    public static <E extends Enum<E>> int mask(Collection<E> values) {
+        int mask = 0;
+        if (values != null) {
+            for (E value : values) {
+                mask |= 1 << value.ordinal();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Computes the mask of one constant, as stored in the column.
+     * @param value the constant, may be null
+     * @return the mask, 0 for null
+     */
+    public static int mask(Enum<?> value) {
+        return value == null ? 0 : 1 << value.ordinal();
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(Set<E> values) {
+        return mask(values);
+    }
+
+    @Override
+    public Set<E> convertToEntityAttribute(Integer mask) {
+        Set<E> values = EnumSet.noneOf(type);
+        if (mask != null) {
+            for (E constant : constants) {
+                if ((mask & 1 << constant.ordinal()) != 0) {
+                    values.add(constant);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Converter of {@link EmployeeSkill} sets
+     */
+    public static class EmployeeSkills extends EnumSetConverter<EmployeeSkill> {
+        public EmployeeSkills() {
+            super(EmployeeSkill.class);
+        }
+    }
+
+    /**
+     * Converter of {@link DayOfWeek} sets
+     */
+    public static class DaysOfWeek extends EnumSetConverter<DayOfWeek> {
+        public DaysOfWeek() {
+            super(DayOfWeek.class);
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package com.udacity.jdnd.course3.critter.entity;
 
 import com.udacity.jdnd.course3.critter.pet.PetType;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 import javax.persistence.*;
 import java.io.Serializable;
 import java.time.LocalDate;
 
-@Data
+/**
+ * Represents a pet in the system. Pets are compared by identity, which the persistence context guarantees is one
+ * instance per row, so a pet keeps its place in its owner's set when its id is assigned on save.
+ */
+@Getter
+@Setter
+@ToString
 @Entity
 @NoArgsConstructor
 public class Pet implements Serializable {
@@ -16,7 +24,8 @@ public class Pet implements Serializable {
      * Unique identifier for the pet.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pet_seq")
+    @SequenceGenerator(name = "pet_seq", sequenceName = "pet_seq", allocationSize = 50)
     private long id;
 
     /**
@@ -33,6 +42,7 @@ public class Pet implements Serializable {
      * Owner of the pet.
      */
     @ManyToOne(targetEntity = Customer.class, optional = false)
+    @ToString.Exclude
     private Customer customer;
     /**
      * Birth date of the pet.
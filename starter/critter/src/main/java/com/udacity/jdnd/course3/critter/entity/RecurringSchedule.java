@@ -0,0 +1,90 @@
+package com.udacity.jdnd.course3.critter.entity;
+
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A schedule that repeats every {@code intervalWeeks} weeks on the given days of the week, from its start date until
+ * its end date, or indefinitely when it has none. Its occurrences are not stored: they are generated for the date
+ * range being read, so a weekly appointment is a single row however long it runs.
+ *
+ * A single occurrence is cancelled by adding its date to the skipped dates. To change one occurrence, skip it and
+ * create a one-off schedule on that date instead.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+public class RecurringSchedule implements Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "recurring_schedule_seq")
+    @SequenceGenerator(name = "recurring_schedule_seq", sequenceName = "recurring_schedule_seq", allocationSize = 50)
+    private long id;
+
+    /**
+     * List of employees scheduled for every occurrence. The index on the employee side of the join table serves the
+     * lookups of an employee's recurring schedules.
+     */
+    @ManyToMany(targetEntity = Employee.class)
+    @JoinTable(name = "recurring_schedule_employees",
+            indexes = @Index(name = "idx_recurring_schedule_employees_employee", columnList = "employees_id, recurring_schedule_id"))
+    @OrderColumn
+    private List<Employee> employees;
+
+    /**
+     * List of pets scheduled for every occurrence. The index on the pet side of the join table serves the lookups of
+     * a pet's recurring schedules.
+     */
+    @ManyToMany(targetEntity = Pet.class)
+    @JoinTable(name = "recurring_schedule_pets",
+            indexes = @Index(name = "idx_recurring_schedule_pets_pet", columnList = "pets_id, recurring_schedule_id"))
+    @OrderColumn
+    private List<Pet> pets;
+
+    /**
+     * Set of activities for every occurrence, stored as a bitmask
+     */
+    @Convert(converter = EnumSetConverter.EmployeeSkills.class)
+    @Column(nullable = false)
+    private Set<EmployeeSkill> activities;
+
+    /**
+     * Date of the first week of the rule. Occurrences before it in that week are left out.
+     */
+    @Column(nullable = false)
+    private LocalDate startDate;
+
+    /**
+     * Date of the last possible occurrence, or null if the schedule does not end
+     */
+    private LocalDate endDate;
+
+    /**
+     * Number of weeks between two weeks with occurrences, 1 for every week
+     */
+    private int intervalWeeks;
+
+    /**
+     * Days of the week the schedule occurs on, stored as a bitmask
+     */
+    @Convert(converter = EnumSetConverter.DaysOfWeek.class)
+    @Column(nullable = false)
+    private Set<DayOfWeek> daysOfWeek;
+
+    /**
+     * Dates of the cancelled occurrences. Loaded apart from the rest of the schedule, for many schedules at once, as
+     * it grows over time.
+     */
+    @ElementCollection
+    @BatchSize(size = 50)
+    private Set<LocalDate> skippedDates = new HashSet<>();
+}
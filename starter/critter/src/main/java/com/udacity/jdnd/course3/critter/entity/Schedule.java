@@ -13,24 +13,42 @@ import java.util.Set;
 @Data
 @Entity
 @NoArgsConstructor
+@Table(indexes = @Index(name = "idx_schedule_date", columnList = "date"))
 public class Schedule implements Serializable {
     /**
-     * Unique ID of the schedule
+     * Unique ID of the schedule. Drawn from a pooled sequence rather than an identity column so that Hibernate can
+     * batch the inserts of many schedules; on databases without sequences it falls back to a table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "schedule_seq")
+    @SequenceGenerator(name = "schedule_seq", sequenceName = "schedule_seq", allocationSize = 50)
     private long id;
 
     /**
-     * List of employees scheduled for the appointment
+     * Version of the schedule, checked when it is updated so that a concurrent change is not overwritten
+     */
+    @Version
+    private long version;
+
+    /**
+     * List of employees scheduled for the appointment. Kept as an indexed list rather than a bag so that it can be
+     * fetched together with the pets in a single query. The index on the employee side of the join table serves the
+     * lookups of an employee's schedules.
      */
     @ManyToMany(targetEntity = Employee.class)
+    @JoinTable(name = "schedule_employees",
+            indexes = @Index(name = "idx_schedule_employees_employee", columnList = "employees_id, schedule_id"))
+    @OrderColumn
     private  List<Employee> employees;
 
     /**
-     * List of pets scheduled for the appointment
+     * List of pets scheduled for the appointment. The index on the pet side of the join table serves the lookups of
+     * a pet's schedules.
      */
     @ManyToMany(targetEntity = Pet.class)
+    @JoinTable(name = "schedule_pets",
+            indexes = @Index(name = "idx_schedule_pets_pet", columnList = "pets_id, schedule_id"))
+    @OrderColumn
     private List<Pet> pets;
 
     /**
@@ -39,8 +57,16 @@ public class Schedule implements Serializable {
     private LocalDate date;
 
     /**
-     * Set of activities for the appointment
+     * Set of activities for the appointment, stored as a bitmask
      */
-    @ElementCollection
+    @Convert(converter = EnumSetConverter.EmployeeSkills.class)
+    @Column(nullable = false)
     private Set<EmployeeSkill> activities;
+
+    /**
+     * Recurring schedule this schedule is an occurrence of. Only set on the occurrences generated when reading, which
+     * are never stored.
+     */
+    @Transient
+    private RecurringSchedule recurringSchedule;
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.StatementCallback;
+
+import javax.sql.DataSource;
+
+/**
+ * A {@link JdbcTemplate} counting the statements it runs with the {@link SqlStatementCounter}, so that the statements
+ * of code reading through JDBC directly show in the per-request statement counts like those Hibernate prepares.
+ * Every query and update of the template goes through one of the two {@code execute} methods counted here.
+ */
+public class CountingJdbcTemplate extends JdbcTemplate {
+    private final SqlStatementCounter sqlStatementCounter;
+
+    /**
+     * Creates the template.
+     * @param dataSource the data source, whose transactional connection is used when a transaction is active
+     * @param sqlStatementCounter counter of the statements run on each thread
+     */
+    public CountingJdbcTemplate(DataSource dataSource, SqlStatementCounter sqlStatementCounter) {
+        super(dataSource);
+        this.sqlStatementCounter = sqlStatementCounter;
+    }
+
+    @Override
+    public <T> T execute(StatementCallback<T> action) {
+        sqlStatementCounter.count();
+        return super.execute(action);
+    }
+
+    @Override
+    public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action) {
+        sqlStatementCounter.count();
+        return super.execute(psc, action);
+    }
+}
@@ -0,0 +1,149 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every request handled by the controllers and every public method of the services.
+ *
+ * <ul>
+ *     <li>{@code critter.controller} and {@code critter.service} are timers tagged with the class, method and thrown
+ *     exception, giving the call rate and latency percentiles of each method.</li>
+ *     <li>{@code critter.controller.sql} is the number of SQL statements prepared while handling one request, so a
+ *     slow endpoint can be traced to its query fan-out. It includes the statements of the JDBC cursors read through a
+ *     {@link CountingJdbcTemplate}.</li>
+ *     <li>{@code critter.controller.rows} is the number of items returned by controller methods returning a list, or
+ *     counted by {@link StreamedRows} as written by those streaming their response.</li>
+ * </ul>
+ *
+ * All of them are published at {@code /actuator/metrics}, for example
+ * {@code /actuator/metrics/critter.controller.sql?tag=method:getScheduleForCustomer}. The statement count of a request
+ * is recorded whether the handler returns or throws, so that a request failing after a large fan-out still shows it.
+ * The meters of each method are built on its first call and kept, so later calls do not go through the registry.
+ */
+@Aspect
+@Component
+public class HotPathMetricsAspect {
+    /**
+     * Percentiles published for every timer and distribution
+     */
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    @Autowired
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    private final SqlStatementCounter sqlStatementCounter;
+
+    /**
+     * Meters of each advised method
+     */
+    private final Map<Method, MethodMeters> meters = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor with dependencies.
+     * @param meterRegistry registry the metrics are published to
+     * @param sqlStatementCounter counter of the statements prepared on each thread
+     */
+    public HotPathMetricsAspect(MeterRegistry meterRegistry, SqlStatementCounter sqlStatementCounter) {
+        this.meterRegistry = meterRegistry;
+        this.sqlStatementCounter = sqlStatementCounter;
+    }
+
+    @Around("within(com.udacity.jdnd.course3.critter.controller..*) "
+            + "&& @within(org.springframework.web.bind.annotation.RestController) "
+            + "&& execution(public * *(..))")
+    public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodMeters methodMeters = meters("critter.controller", joinPoint);
+        long statementsBefore = sqlStatementCounter.current();
+        long streamsBefore = StreamedRows.streams();
+        long streamedRowsBefore = StreamedRows.rows();
+        Object result = null;
+        try {
+            result = time(methodMeters, joinPoint);
+            return result;
+        } finally {
+            methodMeters.summary("critter.controller.sql", "statements")
+                    .record(sqlStatementCounter.current() - statementsBefore);
+            if (result instanceof Collection) {
+                methodMeters.summary("critter.controller.rows", "rows").record(((Collection<?>) result).size());
+            } else if (StreamedRows.streams() != streamsBefore) {
+                methodMeters.summary("critter.controller.rows", "rows").record(StreamedRows.rows() - streamedRowsBefore);
+            }
+        }
+    }
+
+    @Around("within(com.udacity.jdnd.course3.critter.service..*) "
+            + "&& @within(org.springframework.stereotype.Service) "
+            + "&& execution(public * *(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(meters("critter.service", joinPoint), joinPoint);
+    }
+
+    private MethodMeters meters(String timerName, ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return meters.computeIfAbsent(method, m -> new MethodMeters(timerName,
+                joinPoint.getSignature().getDeclaringType().getSimpleName(), m.getName()));
+    }
+
+    private Object time(MethodMeters methodMeters, ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(methodMeters.timer(exception));
+        }
+    }
+
+    /**
+     * The timers of one method, one for each exception it has thrown, and its distributions.
+     */
+    private final class MethodMeters {
+        private final String timerName;
+        private final String className;
+        private final String methodName;
+        private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+        private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+        private MethodMeters(String timerName, String className, String methodName) {
+            this.timerName = timerName;
+            this.className = className;
+            this.methodName = methodName;
+        }
+
+        private Timer timer(String exception) {
+            return timers.computeIfAbsent(exception, e -> Timer.builder(timerName)
+                    .tag("class", className)
+                    .tag("method", methodName)
+                    .tag("exception", e)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+
+        private DistributionSummary summary(String name, String unit) {
+            return summaries.computeIfAbsent(name, n -> DistributionSummary.builder(n)
+                    .baseUnit(unit)
+                    .tag("class", className)
+                    .tag("method", methodName)
+                    .publishPercentiles(PERCENTILES)
+                    .register(meterRegistry));
+        }
+    }
+}
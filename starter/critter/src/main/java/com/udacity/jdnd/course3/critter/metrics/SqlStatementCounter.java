@@ -0,0 +1,53 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Counts the SQL statements Hibernate prepares on each thread, and those run through a {@link CountingJdbcTemplate}.
+ * The counter only ever grows; callers read it before and after a unit of work and record the difference, so nested
+ * measurements do not interfere with each other.
+ */
+@Component
+public class SqlStatementCounter implements StatementInspector, HibernatePropertiesCustomizer {
+    private final ThreadLocal<long[]> count = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Registers this counter as the statement inspector of the session factory.
+     * @param hibernateProperties the properties the session factory is built with
+     */
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    /**
+     * Counts a statement and passes it on unchanged.
+     * @param sql the statement about to be prepared
+     * @return the same statement
+     */
+    @Override
+    public String inspect(String sql) {
+        count();
+        return sql;
+    }
+
+    /**
+     * Counts a statement run on the current thread.
+     */
+    public void count() {
+        count.get()[0]++;
+    }
+
+    /**
+     * Gets the number of statements prepared on the current thread so far.
+     * @return the running count
+     */
+    public long current() {
+        return count.get()[0];
+    }
+}
@@ -0,0 +1,44 @@
+package com.udacity.jdnd.course3.critter.metrics;
+
+/**
+ * Counts the responses streamed on each thread and the items written to them, for the handlers that write their
+ * response themselves instead of returning a list. Like the {@link SqlStatementCounter}, the counts only ever grow,
+ * and the {@link HotPathMetricsAspect} records their difference over a request.
+ */
+public final class StreamedRows {
+    /**
+     * Number of responses started and of items written on each thread
+     */
+    private static final ThreadLocal<long[]> COUNTS = ThreadLocal.withInitial(() -> new long[2]);
+
+    private StreamedRows() {
+    }
+
+    /**
+     * Counts a response about to be streamed.
+     */
+    public static void started() {
+        COUNTS.get()[0]++;
+    }
+
+    /**
+     * Counts an item written to a streamed response.
+     */
+    public static void written() {
+        COUNTS.get()[1]++;
+    }
+
+    /**
+     * Gets the number of responses streamed on the current thread so far.
+     */
+    static long streams() {
+        return COUNTS.get()[0];
+    }
+
+    /**
+     * Gets the number of items written to streamed responses on the current thread so far.
+     */
+    static long rows() {
+        return COUNTS.get()[1];
+    }
+}
@@ -1,7 +1,35 @@
 package com.udacity.jdnd.course3.critter.repository;
 
 import com.udacity.jdnd.course3.critter.entity.Customer;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
-}
\ No newline at end of file
+    @Query("select c.id from Customer c where c.id > :afterId order by c.id")
+    List<Long> getIdsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    @Query("select c.id from Customer c where c.id in :customerIds")
+    List<Long> getExistingIds(@Param("customerIds") Collection<Long> customerIds);
+
+    @Query("select c.aggregateVersion from Customer c where c.id = :customerId")
+    Optional<Long> getAggregateVersion(@Param("customerId") long customerId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update Customer c set c.aggregateVersion = c.aggregateVersion + 1 where c.id in :customerIds")
+    int bumpAggregateVersions(@Param("customerIds") Collection<Long> customerIds);
+
+    @EntityGraph(attributePaths = "pets")
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct c from Customer c where c.id in :customerIds order by c.id")
+    List<Customer> getAllByIdIn(@Param("customerIds") Collection<Long> customerIds);
+}
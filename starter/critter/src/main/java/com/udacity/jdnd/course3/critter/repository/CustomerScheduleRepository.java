@@ -0,0 +1,20 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.entity.CustomerSchedule;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface CustomerScheduleRepository extends JpaRepository<CustomerSchedule, Long> {
+    @Query("select cs.customerId from CustomerSchedule cs where cs.schedule in :schedules")
+    List<Long> getCustomerIdsByScheduleIn(@Param("schedules") Collection<Schedule> schedules);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from CustomerSchedule cs where cs.schedule in :schedules")
+    int deleteAllByScheduleIn(@Param("schedules") Collection<Schedule> schedules);
+}
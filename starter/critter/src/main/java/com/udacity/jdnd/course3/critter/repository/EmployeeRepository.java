@@ -2,10 +2,51 @@ package com.udacity.jdnd.course3.critter.repository;
 
 import com.udacity.jdnd.course3.critter.entity.Employee;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import java.time.DayOfWeek;
+import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ * Employees are read with their skills and days available, which are bitmask columns of the employee row, so none of
+ * these lookups joins or lazily loads another table.
+ */
 public interface EmployeeRepository extends JpaRepository<Employee, Long> {
-    List<Employee> getAllByDaysAvailableContains(DayOfWeek dayOfWeek);
-}
\ No newline at end of file
+    List<Employee> getByIdIn(Collection<Long> employeeIds);
+
+    /**
+     * Finds employees and locks their rows until the end of the transaction. The rows are locked in id order, so
+     * that two transactions locking overlapping employees cannot deadlock.
+     * @param employeeIds the ids of the employees
+     * @return the employees in id order
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select e from Employee e where e.id in :employeeIds order by e.id")
+    List<Employee> lockAllByIdIn(@Param("employeeIds") Collection<Long> employeeIds);
+
+    @Query("select e.aggregateVersion from Employee e where e.id = :employeeId")
+    Optional<Long> getAggregateVersion(@Param("employeeId") long employeeId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update Employee e set e.aggregateVersion = e.aggregateVersion + 1 where e.id in :employeeIds")
+    int bumpAggregateVersions(@Param("employeeIds") Collection<Long> employeeIds);
+
+    @Query("select e from Employee e")
+    List<Employee> getAllWithAvailability();
+
+    /**
+     * Finds the employees having all of some skills and working on some days.
+     * @param skills the mask of the required skills, computed by
+     *               {@link com.udacity.jdnd.course3.critter.entity.EnumSetConverter#mask}
+     * @param days the mask of the days the employees must work on
+     * @return the matching employees in id order
+     */
+    @Query("select e from Employee e where bitand(e.skills, :skills) = :skills " +
+            "and bitand(e.daysAvailable, :days) = :days order by e.id")
+    List<Employee> getAllAvailable(@Param("skills") int skills, @Param("days") int days);
+}
@@ -0,0 +1,15 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface EmployeeSlotRepository extends JpaRepository<EmployeeSlot, Long> {
+    @Query("select s from EmployeeSlot s where s.employeeId in :employeeIds and s.date >= :from order by s.date, s.employeeId")
+    List<EmployeeSlot> getAllByEmployeeIdInFrom(@Param("employeeIds") Collection<Long> employeeIds, @Param("from") LocalDate from);
+}
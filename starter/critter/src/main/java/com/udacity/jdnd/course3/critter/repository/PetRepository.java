@@ -1,10 +1,31 @@
 package com.udacity.jdnd.course3.critter.repository;
 
 import com.udacity.jdnd.course3.critter.entity.Pet;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface PetRepository extends JpaRepository<Pet, Long> {
     List<Pet> getAllByCustomerId(Long customerId);
-}
\ No newline at end of file
+
+    @EntityGraph(attributePaths = "customer.pets")
+    Optional<Pet> getWithOwnerById(Long petId);
+
+    @EntityGraph(attributePaths = "customer")
+    List<Pet> getAllByIdGreaterThanOrderById(long afterId, Pageable pageable);
+
+    @EntityGraph(attributePaths = "customer")
+    List<Pet> getAllByIdIn(Collection<Long> petIds);
+
+    @Query("select p.id from Pet p where p.customer.id in :customerIds")
+    List<Long> getIdsByCustomerIdIn(@Param("customerIds") Collection<Long> customerIds);
+
+    @Query("select p.customer.id from Pet p where p.id = :petId")
+    Optional<Long> getOwnerIdById(@Param("petId") long petId);
+}
@@ -0,0 +1,80 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.entity.RecurringSchedule;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Recurring schedule lookups load the employees and pets of every schedule in the same query, like the
+ * {@link ScheduleRepository} lookups. The date range lookups return the schedules running at any time within the
+ * range, whether or not they occur in it, that have all of the given activities: pass the mask computed by
+ * {@link com.udacity.jdnd.course3.critter.entity.EnumSetConverter#mask}, or 0 for any. The lookups of the employees
+ * taken by recurring schedules only load the employees.
+ */
+public interface RecurringScheduleRepository extends JpaRepository<RecurringSchedule, Long> {
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from RecurringSchedule r where r.id in " +
+            "(select matching.id from RecurringSchedule matching join matching.pets pet where pet.id = :petId) " +
+            "order by r.id")
+    List<RecurringSchedule> getAllByPetId(@Param("petId") long petId);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from RecurringSchedule r where r.id in " +
+            "(select matching.id from RecurringSchedule matching join matching.employees employee " +
+            "where employee.id = :employeeId) " +
+            "order by r.id")
+    List<RecurringSchedule> getAllByEmployeeId(@Param("employeeId") long employeeId);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from RecurringSchedule r where r.id in " +
+            "(select matching.id from RecurringSchedule matching join matching.pets pet where pet.id = :petId) " +
+            "and r.startDate <= :to and (r.endDate is null or r.endDate >= :from) " +
+            "and bitand(r.activities, :activities) = :activities order by r.id")
+    List<RecurringSchedule> getAllByPetIdBetween(@Param("petId") long petId, @Param("from") LocalDate from,
+                                                 @Param("to") LocalDate to, @Param("activities") int activities);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from RecurringSchedule r where r.id in " +
+            "(select matching.id from RecurringSchedule matching join matching.employees employee " +
+            "where employee.id = :employeeId) " +
+            "and r.startDate <= :to and (r.endDate is null or r.endDate >= :from) " +
+            "and bitand(r.activities, :activities) = :activities order by r.id")
+    List<RecurringSchedule> getAllByEmployeeIdBetween(@Param("employeeId") long employeeId, @Param("from") LocalDate from,
+                                                      @Param("to") LocalDate to, @Param("activities") int activities);
+
+    @EntityGraph(attributePaths = "employees")
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from RecurringSchedule r " +
+            "where r.startDate <= :to and (r.endDate is null or r.endDate >= :from) order by r.id")
+    List<RecurringSchedule> getAllBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @EntityGraph(attributePaths = "employees")
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from RecurringSchedule r where r.id in " +
+            "(select matching.id from RecurringSchedule matching join matching.employees employee " +
+            "where employee.id in :employeeIds) " +
+            "and r.startDate <= :to and (r.endDate is null or r.endDate >= :from) order by r.id")
+    List<RecurringSchedule> getAllByEmployeeIdInBetween(@Param("employeeIds") Collection<Long> employeeIds,
+                                                        @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @EntityGraph(attributePaths = "employees")
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from RecurringSchedule r where r.id in " +
+            "(select matching.id from RecurringSchedule matching join matching.employees employee " +
+            "where employee.id in :employeeIds) " +
+            "and (r.endDate is null or r.endDate >= :from) order by r.id")
+    List<RecurringSchedule> getAllByEmployeeIdInFrom(@Param("employeeIds") Collection<Long> employeeIds,
+                                                     @Param("from") LocalDate from);
+}
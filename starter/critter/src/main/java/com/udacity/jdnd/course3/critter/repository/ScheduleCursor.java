@@ -0,0 +1,148 @@
+package com.udacity.jdnd.course3.critter.repository;
+
+import com.udacity.jdnd.course3.critter.dto.LongIdList;
+import com.udacity.jdnd.course3.critter.entity.EnumSetConverter;
+import com.udacity.jdnd.course3.critter.metrics.CountingJdbcTemplate;
+import com.udacity.jdnd.course3.critter.metrics.SqlStatementCounter;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Reads every schedule through a JDBC cursor, without loading entities.
+ *
+ * The schedules, whose rows carry their activities, are read off one cursor in id order, which the primary key gives
+ * without sorting, so the first rows arrive as soon as the query starts. They are handed on in chunks of
+ * {@code critter.stream.fetch-size}: the employee and pet ids of a chunk are read by one query each over the chunk's
+ * id range, in the order of the join tables' primary keys. Only the chunk being read is held in memory, and rows are
+ * fetched from the database {@code critter.stream.fetch-size} at a time.
+ */
+@Repository
+public class ScheduleCursor {
+    private static final EnumSetConverter<EmployeeSkill> ACTIVITIES = new EnumSetConverter.EmployeeSkills();
+
+    private static final String SCHEDULES = "select id, activities, date from schedule order by id";
+
+    private static final String EMPLOYEE_IDS = "select schedule_id, employees_id from schedule_employees " +
+            "where schedule_id between ? and ? order by schedule_id, employees_order";
+
+    private static final String PET_IDS = "select schedule_id, pets_id from schedule_pets " +
+            "where schedule_id between ? and ? order by schedule_id, pets_order";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Number of schedules handed on together
+     */
+    private final int chunkSize;
+
+    /**
+     * Creates the cursor.
+     * @param dataSource the data source, whose transactional connection is used when a transaction is active
+     * @param sqlStatementCounter counter the statements of the cursor are counted with
+     * @param fetchSize the number of rows fetched from the database at a time, and of schedules read per chunk
+     */
+    public ScheduleCursor(DataSource dataSource, SqlStatementCounter sqlStatementCounter,
+                          @Value("${critter.stream.fetch-size:500}") int fetchSize) {
+        jdbcTemplate = new CountingJdbcTemplate(dataSource, sqlStatementCounter);
+        jdbcTemplate.setFetchSize(fetchSize);
+        chunkSize = fetchSize;
+    }
+
+    /**
+     * Reads every schedule in id order.
+     * @param action the action to perform on each schedule, called once the ids of its chunk have been read
+     */
+    public void forEach(Consumer<ScheduleDTO> action) {
+        List<ScheduleDTO> chunk = new ArrayList<>(chunkSize);
+        jdbcTemplate.query(SCHEDULES, rs -> {
+            ScheduleDTO schedule = new ScheduleDTO();
+            schedule.setId(rs.getLong(1));
+            schedule.setActivities(ACTIVITIES.convertToEntityAttribute(rs.getInt(2)));
+            Date date = rs.getDate(3);
+            schedule.setDate(date == null ? null : date.toLocalDate());
+            chunk.add(schedule);
+            if (chunk.size() == chunkSize) {
+                handOn(chunk, action);
+            }
+        });
+        handOn(chunk, action);
+    }
+
+    /**
+     * Reads the employee and pet ids of a chunk of schedules, hands the schedules on and empties the chunk.
+     */
+    private void handOn(List<ScheduleDTO> chunk, Consumer<ScheduleDTO> action) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        readIds(EMPLOYEE_IDS, chunk, ScheduleDTO::setEmployeeIds);
+        readIds(PET_IDS, chunk, ScheduleDTO::setPetIds);
+        chunk.forEach(action);
+        chunk.clear();
+    }
+
+    private void readIds(String sql, List<ScheduleDTO> chunk, BiConsumer<ScheduleDTO, LongIdList> setter) {
+        IdAssembler assembler = new IdAssembler(chunk, setter);
+        jdbcTemplate.query(sql, assembler, chunk.get(0).getId(), chunk.get(chunk.size() - 1).getId());
+        assembler.finish();
+    }
+
+    /**
+     * Collects the ids of each schedule of a chunk from rows ordered by schedule id, and sets them when the rows of a
+     * later schedule start.
+     */
+    private static final class IdAssembler implements RowCallbackHandler {
+        private final List<ScheduleDTO> chunk;
+        private final BiConsumer<ScheduleDTO, LongIdList> setter;
+        private final LongIdList.Builder ids = new LongIdList.Builder();
+
+        /**
+         * Index in the chunk of the schedule whose ids are being read
+         */
+        private int index;
+
+        private IdAssembler(List<ScheduleDTO> chunk, BiConsumer<ScheduleDTO, LongIdList> setter) {
+            this.chunk = chunk;
+            this.setter = setter;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long scheduleId = rs.getLong(1);
+            while (index < chunk.size() && chunk.get(index).getId() < scheduleId) {
+                next();
+            }
+            //skips the rows of a schedule the cursor did not return
+            if (index < chunk.size() && chunk.get(index).getId() == scheduleId) {
+                ids.add(rs.getLong(2));
+            }
+        }
+
+        /**
+         * Sets the ids of the schedules left, which have no more rows.
+         */
+        private void finish() {
+            while (index < chunk.size()) {
+                next();
+            }
+        }
+
+        private void next() {
+            setter.accept(chunk.get(index++), ids.build());
+            ids.clear();
+        }
+    }
+}
@@ -1,14 +1,108 @@
 package com.udacity.jdnd.course3.critter.repository;
 
-import com.udacity.jdnd.course3.critter.entity.Employee;
-import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.entity.Schedule;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Schedule lookups load the employees and pets of every schedule in the same query, so mapping the results to DTOs
+ * does not lazily load each collection; the activities are a column of the schedule. The distinct is applied in
+ * memory only, as the joined rows differ from each other anyway. The lookups by employee or pet filter through a
+ * subquery, since Hibernate would fetch a collection through a join filtering it, loading only the matching element.
+ *
+ * The date range lookups include both ends of the range, and only return schedules including all of the activities
+ * of the given mask, computed by {@link com.udacity.jdnd.course3.critter.entity.EnumSetConverter#mask}, or any
+ * schedule for 0. Schedules are indexed by date, the join tables by employee and pet, and the per-customer view by
+ * customer and date, so a short range is read through an index instead of the whole history.
+ */
 public interface ScheduleRepository extends JpaRepository<Schedule, Long> {
-    List<Schedule> getAllByPetsContains(Pet pet);
-    List<Schedule> getAllByEmployeesContains(Employee employee);
-    List<Schedule> getAllByPetsIn(List<Pet> pets);
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s where s.id in " +
+            "(select matching.id from Schedule matching join matching.pets pet where pet.id = :petId) " +
+            "order by s.id")
+    List<Schedule> getAllByPetId(@Param("petId") long petId);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s where s.id in " +
+            "(select matching.id from Schedule matching join matching.pets pet where pet.id in :petIds) " +
+            "order by s.id")
+    List<Schedule> getAllByPetIdIn(@Param("petIds") Collection<Long> petIds);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s where s.id in " +
+            "(select matching.id from Schedule matching join matching.employees employee " +
+            "where employee.id = :employeeId) " +
+            "order by s.id")
+    List<Schedule> getAllByEmployeeId(@Param("employeeId") long employeeId);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s join CustomerSchedule cs on cs.schedule = s " +
+            "where cs.customerId = :customerId order by cs.date, s.id")
+    List<Schedule> getAllByCustomerId(@Param("customerId") long customerId);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s where s.date between :from and :to " +
+            "and bitand(s.activities, :activities) = :activities order by s.date, s.id")
+    List<Schedule> getAllBetween(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                                 @Param("activities") int activities);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s where s.id in " +
+            "(select matching.id from Schedule matching join matching.pets pet where pet.id = :petId) " +
+            "and s.date between :from and :to " +
+            "and bitand(s.activities, :activities) = :activities order by s.date, s.id")
+    List<Schedule> getAllByPetIdBetween(@Param("petId") long petId, @Param("from") LocalDate from,
+                                        @Param("to") LocalDate to, @Param("activities") int activities);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s where s.id in " +
+            "(select matching.id from Schedule matching join matching.employees employee " +
+            "where employee.id = :employeeId) " +
+            "and s.date between :from and :to " +
+            "and bitand(s.activities, :activities) = :activities order by s.date, s.id")
+    List<Schedule> getAllByEmployeeIdBetween(@Param("employeeId") long employeeId, @Param("from") LocalDate from,
+                                             @Param("to") LocalDate to, @Param("activities") int activities);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s join CustomerSchedule cs on cs.schedule = s " +
+            "where cs.customerId = :customerId and cs.date between :from and :to " +
+            "and bitand(s.activities, :activities) = :activities order by cs.date, s.id")
+    List<Schedule> getAllByCustomerIdBetween(@Param("customerId") long customerId, @Param("from") LocalDate from,
+                                             @Param("to") LocalDate to, @Param("activities") int activities);
+
+    @EntityGraph(attributePaths = {"employees", "pets.customer"})
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct s from Schedule s where s.id in :scheduleIds order by s.id")
+    List<Schedule> getAllByIdIn(@Param("scheduleIds") Collection<Long> scheduleIds);
+
+    @Query("select s.id from Schedule s where s.id > :afterId order by s.id")
+    List<Long> getIdsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    @Query("select s.date as date, e.id as employeeId from Schedule s join s.employees e where s.date >= :from")
+    List<EmployeeBooking> getAllEmployeeBookingsFrom(@Param("from") LocalDate from);
+
+    /**
+     * An employee booked on a schedule's date.
+     */
+    interface EmployeeBooking {
+        LocalDate getDate();
+        Long getEmployeeId();
+    }
 }
\ No newline at end of file
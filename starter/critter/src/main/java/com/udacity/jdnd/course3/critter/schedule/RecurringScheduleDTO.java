@@ -0,0 +1,103 @@
+package com.udacity.jdnd.course3.critter.schedule;
+
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents the form that recurring schedule request and response data takes. Does not map
+ * to the database directly.
+ *
+ * The schedule occurs every {@code intervalWeeks} weeks (every week if omitted) on each of {@code daysOfWeek} (the day
+ * of the start date if omitted), from {@code startDate} to {@code endDate}, or indefinitely if there is no end date.
+ */
+public class RecurringScheduleDTO {
+    private long id;
+    private List<Long> employeeIds;
+    private List<Long> petIds;
+    private Set<EmployeeSkill> activities;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private int intervalWeeks;
+    private Set<DayOfWeek> daysOfWeek;
+    private Set<LocalDate> skippedDates;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public List<Long> getEmployeeIds() {
+        return employeeIds;
+    }
+
+    public void setEmployeeIds(List<Long> employeeIds) {
+        this.employeeIds = employeeIds;
+    }
+
+    public List<Long> getPetIds() {
+        return petIds;
+    }
+
+    public void setPetIds(List<Long> petIds) {
+        this.petIds = petIds;
+    }
+
+    public Set<EmployeeSkill> getActivities() {
+        return activities;
+    }
+
+    public void setActivities(Set<EmployeeSkill> activities) {
+        this.activities = activities;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public int getIntervalWeeks() {
+        return intervalWeeks;
+    }
+
+    public void setIntervalWeeks(int intervalWeeks) {
+        this.intervalWeeks = intervalWeeks;
+    }
+
+    public Set<DayOfWeek> getDaysOfWeek() {
+        return daysOfWeek;
+    }
+
+    public void setDaysOfWeek(Set<DayOfWeek> daysOfWeek) {
+        this.daysOfWeek = daysOfWeek;
+    }
+
+    /**
+     * Gets the dates of the cancelled occurrences.
+     * @return the skipped dates
+     */
+    public Set<LocalDate> getSkippedDates() {
+        return skippedDates;
+    }
+
+    public void setSkippedDates(Set<LocalDate> skippedDates) {
+        this.skippedDates = skippedDates;
+    }
+}
@@ -1,5 +1,6 @@
 package com.udacity.jdnd.course3.critter.schedule;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
 
 import java.time.LocalDate;
@@ -17,6 +18,13 @@ public class ScheduleDTO {
     private LocalDate date;
     private Set<EmployeeSkill> activities;
 
+    /**
+     * ID of the recurring schedule this is an occurrence of, left out of stored schedules. Occurrences are generated
+     * when read and have no ID of their own.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long recurringScheduleId;
+
     public long getId(){
         return id;
     }
@@ -56,4 +64,12 @@ public class ScheduleDTO {
     public void setActivities(Set<EmployeeSkill> activities) {
         this.activities = activities;
     }
+
+    public long getRecurringScheduleId() {
+        return recurringScheduleId;
+    }
+
+    public void setRecurringScheduleId(long recurringScheduleId) {
+        this.recurringScheduleId = recurringScheduleId;
+    }
 }
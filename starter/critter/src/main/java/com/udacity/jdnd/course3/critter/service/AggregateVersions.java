@@ -0,0 +1,93 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versions of the customer and employee aggregates, from which the controllers build the ETags of conditional GETs
+ * with a single read of the aggregate's row instead of building its DTOs.
+ *
+ * A customer's version covers the customer, their pets and the schedules of the per-customer schedule view; an
+ * employee's version covers the employee and their schedules and recurring schedules. The versions are columns of the
+ * customer and employee rows, bumped by the services in the transaction that changes the aggregate, so they commit
+ * or roll back with the change and every instance sharing the database hands out the same ETags.
+ *
+ * The responses are partly built from the local caches, which another instance only evicts when it changes the rows
+ * itself, so a response carrying a new version may still hold old cached rows until they expire. ETags therefore also
+ * name the period of {@code critter.etag.lifetime-seconds} they were handed out in, kept no longer than the cache
+ * expiry, so no ETag is confirmed with 304 Not Modified for longer than that.
+ */
+@Service
+public class AggregateVersions {
+    private final CustomerRepository customersRepository;
+    private final EmployeeRepository employeesRepository;
+
+    /**
+     * Lifetime of an ETag in milliseconds
+     */
+    private final long lifetime;
+
+    /**
+     * Constructor with dependencies.
+     * @param customersRepository repository holding the customer versions
+     * @param employeesRepository repository holding the employee versions
+     * @param lifetimeSeconds how long, at most, an ETag stays current
+     */
+    public AggregateVersions(CustomerRepository customersRepository, EmployeeRepository employeesRepository,
+                             @Value("${critter.etag.lifetime-seconds:600}") long lifetimeSeconds) {
+        this.customersRepository = customersRepository;
+        this.employeesRepository = employeesRepository;
+        this.lifetime = TimeUnit.SECONDS.toMillis(lifetimeSeconds);
+    }
+
+    /**
+     * Gets the strong ETag of the current version of a customer.
+     * @param customerId the id of the customer
+     * @return the ETag, quoted, or null if there is no such customer
+     */
+    public String customerETag(long customerId) {
+        return customersRepository.getAggregateVersion(customerId)
+                .map(version -> eTag("customer", customerId, version))
+                .orElse(null);
+    }
+
+    /**
+     * Gets the strong ETag of the current version of an employee.
+     * @param employeeId the id of the employee
+     * @return the ETag, quoted, or null if there is no such employee
+     */
+    public String employeeETag(long employeeId) {
+        return employeesRepository.getAggregateVersion(employeeId)
+                .map(version -> eTag("employee", employeeId, version))
+                .orElse(null);
+    }
+
+    /**
+     * Bumps the versions of customers in the surrounding transaction, which keeps their rows locked until it ends.
+     * @param customerIds the ids of the changed customers
+     */
+    void customersChanged(Collection<Long> customerIds) {
+        if (!customerIds.isEmpty()) {
+            customersRepository.bumpAggregateVersions(customerIds);
+        }
+    }
+
+    /**
+     * Bumps the versions of employees in the surrounding transaction, which keeps their rows locked until it ends.
+     * @param employeeIds the ids of the changed employees
+     */
+    void employeesChanged(Collection<Long> employeeIds) {
+        if (!employeeIds.isEmpty()) {
+            employeesRepository.bumpAggregateVersions(employeeIds);
+        }
+    }
+
+    private String eTag(String aggregate, long id, long version) {
+        return "\"" + aggregate + "-" + id + "-" + version + "-" + System.currentTimeMillis() / lifetime + "\"";
+    }
+}
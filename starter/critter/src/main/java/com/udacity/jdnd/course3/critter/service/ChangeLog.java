@@ -0,0 +1,129 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.dto.ChangeEventDTO;
+import com.udacity.jdnd.course3.critter.dto.ChangeEventsDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process outbox of the changes made by the services, read by consumers that follow changes instead of reloading
+ * whole lists.
+ *
+ * A change is appended once its transaction commits, so rolled back changes are never seen and events are in commit
+ * order. The last {@code critter.events.capacity} events are held in a ring buffer, each numbered by an increasing
+ * offset. Offsets start from the startup time in microseconds, so the offsets of an earlier run are older than any
+ * held event and a consumer reading after a restart is told it missed events. Offset 0 stands for the oldest event
+held, so a consumer starting from scratch reads every event held without being told it missed any. Only the changes made through this
+ * instance are listed.
+ */
+@Component
+public class ChangeLog {
+    private final ChangeEventDTO[] events;
+
+    /**
+     * Offset of the first event of this run
+     */
+    private final long base;
+
+    /**
+     * Offset the next event will get
+     */
+    private long next;
+
+    /**
+     * Actions to run when the next event is appended
+     */
+    private final List<Runnable> waiters = new ArrayList<>();
+
+    /**
+     * Creates the log.
+     * @param capacity number of events held
+     */
+    public ChangeLog(@Value("${critter.events.capacity:10000}") int capacity) {
+        this.events = new ChangeEventDTO[capacity];
+        this.base = System.currentTimeMillis() * 1000;
+        this.next = base;
+    }
+
+    /**
+     * Records a change, to be appended when the surrounding transaction commits.
+     * @param entity the kind of entity changed
+     * @param action the kind of change
+     * @param id the id of the entity
+     */
+    public void record(ChangeEventDTO.Entity entity, ChangeEventDTO.Action action, long id) {
+        TransactionCallbacks.afterCommit(() -> append(entity, action, id));
+    }
+
+    private void append(ChangeEventDTO.Entity entity, ChangeEventDTO.Action action, long id) {
+        List<Runnable> woken;
+        synchronized (this) {
+            events[(int) ((next - base) % events.length)] = new ChangeEventDTO(next, entity, action, id, Instant.now());
+            next++;
+            woken = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        woken.forEach(Runnable::run);
+    }
+
+    /**
+     * Gets the offset the next event will get, from which a consumer only interested in new events starts reading.
+     * @return the offset
+     */
+    public synchronized long head() {
+        return next;
+    }
+
+    /**
+     * Reads the events from an offset on.
+     * @param since the offset of the first event to read, or 0 for the oldest event held
+     * @param limit the maximum number of events to read
+     * @return the events, with the offset to read the following ones from
+     */
+    public synchronized ChangeEventsDTO read(long since, int limit) {
+        long oldest = oldest();
+        long start = since == 0 ? oldest : since;
+        boolean missed = start < oldest || start > next;
+        long from = missed ? oldest : start;
+        long to = Math.min(next, from + limit);
+        List<ChangeEventDTO> read = new ArrayList<>((int) (to - from));
+        for (long offset = from; offset < to; offset++) {
+            read.add(events[(int) ((offset - base) % events.length)]);
+        }
+        return new ChangeEventsDTO(read, to, missed);
+    }
+
+    /**
+     * Registers an action to run once there is an event to read from an offset, unless there already is one.
+     * @param since the offset to read from, or 0 for the oldest event held
+     * @param waiter the action, run on the thread committing the next change
+     * @return true if the action was registered, false if there is something to read already: events, or the news
+     * that events were missed
+     */
+    public synchronized boolean await(long since, Runnable waiter) {
+        if ((since == 0 ? oldest() : since) != next) {
+            return false;
+        }
+        waiters.add(waiter);
+        return true;
+    }
+
+    /**
+     * Gets the offset of the oldest event held. Called with the monitor held.
+     */
+    private long oldest() {
+        return Math.max(base, next - events.length);
+    }
+
+    /**
+     * Removes an action registered with {@link #await} that is no longer needed.
+     * @param waiter the action
+     */
+    public synchronized void cancel(Runnable waiter) {
+        waiters.remove(waiter);
+    }
+}
@@ -0,0 +1,76 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.CustomerSchedule;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.repository.CustomerScheduleRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the per-customer schedule view in step with the owners of the scheduled pets. A schedule is linked once to
+ * each customer owning any of its pets: the links are added when schedules are saved, and rebuilt when pets move to
+ * another owner. The customers whose links change have their versions bumped.
+ */
+@Component
+class CustomerScheduleView {
+    private final CustomerScheduleRepository customerSchedulesRepository;
+    private final ScheduleRepository scheduleRepository;
+    private final AggregateVersions versions;
+
+    /**
+     * Constructor with dependencies.
+     * @param customerSchedulesRepository repository of the per-customer schedule view
+     * @param scheduleRepository repository the schedules of moved pets are read from
+     * @param versions versions of the customers, bumped when their links change
+     */
+    CustomerScheduleView(CustomerScheduleRepository customerSchedulesRepository, ScheduleRepository scheduleRepository,
+                         AggregateVersions versions) {
+        this.customerSchedulesRepository = customerSchedulesRepository;
+        this.scheduleRepository = scheduleRepository;
+        this.versions = versions;
+    }
+
+    /**
+     * Links saved schedules to the owners of their pets.
+     * @param schedules the saved schedules, with their pets and owners loaded
+     */
+    void link(List<Schedule> schedules) {
+        List<CustomerSchedule> links = new ArrayList<>();
+        for (Schedule schedule : schedules) {
+            schedule.getPets().stream()
+                    .map(pet -> pet.getCustomer().getId())
+                    .collect(Collectors.toCollection(LinkedHashSet::new))
+                    .forEach(customerId -> links.add(new CustomerSchedule(customerId, schedule)));
+        }
+        customerSchedulesRepository.saveAll(links);
+        versions.customersChanged(links.stream().map(CustomerSchedule::getCustomerId).collect(Collectors.toSet()));
+    }
+
+    /**
+     * Rebuilds the links of the schedules of pets that moved to another owner. The links of those schedules are
+     * deleted and added again from the current owners of their pets, which unlinks the previous owners of the moved
+     * pets unless they still own another pet of the schedule.
+     * @param petIds the ids of the moved pets, whose new owner is set in the current transaction
+     */
+    void relink(Collection<Long> petIds) {
+        if (petIds.isEmpty()) {
+            return;
+        }
+        List<Schedule> schedules = scheduleRepository.getAllByPetIdIn(petIds);
+        if (schedules.isEmpty()) {
+            return;
+        }
+        Set<Long> previousCustomerIds = new HashSet<>(customerSchedulesRepository.getCustomerIdsByScheduleIn(schedules));
+        customerSchedulesRepository.deleteAllByScheduleIn(schedules);
+        versions.customersChanged(previousCustomerIds);
+        link(schedules);
+    }
+}
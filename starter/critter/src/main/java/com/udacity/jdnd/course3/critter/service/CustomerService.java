@@ -1,15 +1,26 @@
 package com.udacity.jdnd.course3.critter.service;
 
+import com.udacity.jdnd.course3.critter.config.CacheConfig;
+import com.udacity.jdnd.course3.critter.config.ReadFromPrimary;
+import com.udacity.jdnd.course3.critter.dto.ChangeEventDTO;
 import com.udacity.jdnd.course3.critter.entity.Customer;
 import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
 import com.udacity.jdnd.course3.critter.repository.PetRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
-import java.util.LinkedList;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceContext;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 @Transactional
@@ -20,9 +31,34 @@ public class CustomerService {
     @Autowired
     private PetRepository petsRepository;
 
-    public CustomerService(CustomerRepository customersRepository, PetRepository petsRepository) {
+    @Autowired
+    private EntityResolver entityResolver;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private AggregateVersions versions;
+
+    @Autowired
+    private CustomerScheduleView customerScheduleView;
+
+    @Autowired
+    private OwnerCaches ownerCaches;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public CustomerService(CustomerRepository customersRepository, PetRepository petsRepository,
+                           EntityResolver entityResolver, ChangeLog changeLog, AggregateVersions versions,
+                           CustomerScheduleView customerScheduleView, OwnerCaches ownerCaches) {
         this.customersRepository = customersRepository;
         this.petsRepository = petsRepository;
+        this.entityResolver = entityResolver;
+        this.changeLog = changeLog;
+        this.versions = versions;
+        this.customerScheduleView = customerScheduleView;
+        this.ownerCaches = ownerCaches;
     }
 
     /**
@@ -30,33 +66,91 @@ public class CustomerService {
      *
      * @return a list of all customers
      */
+    @Transactional(readOnly = true)
     public List<Customer> getAllCustomers() {
         return customersRepository.findAll();
     }
 
     /**
-     * Retrieves the customer associated with the specified pet ID.
+     * Retrieves one page of customers, ordered by ID.
+     *
+     * @param afterId the ID of the last customer of the previous page, 0 for the first page
+     * @param limit the maximum number of customers to return
+     * @return a list of customers with their pets loaded
+     */
+    @Transactional(readOnly = true)
+    public List<Customer> getCustomersAfter(long afterId, int limit) {
+        List<Long> customerIds = customersRepository.getIdsAfter(afterId, KeysetPages.first(limit));
+        if (customerIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return customersRepository.getAllByIdIn(customerIds);
+    }
+
+    /**
+     * Visits every customer after the specified ID in ID order, reading them in fixed-size chunks.
+     *
+     * @param afterId the ID to start after, 0 to visit every customer
+     * @param action the action to perform on each customer
+     */
+    @Transactional(readOnly = true)
+    public void forEachCustomer(long afterId, Consumer<Customer> action) {
+        KeysetPages.forEach(afterId, id -> getCustomersAfter(id, KeysetPages.CHUNK_SIZE), Customer::getId, action, entityManager);
+    }
+
+    /**
+     * Retrieves the customer associated with the specified pet ID, with the customer's pets loaded.
+     * Owners are cached by pet ID, so repeated lookups do not reach the database; a miss is read from the primary.
      *
      * @param petId the ID of the pet whose owner is to be retrieved
      * @return the customer associated with the specified pet ID
+     * @throws EntityNotFoundException if the pet does not exist
      */
+    @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.OWNERS)
+    @ReadFromPrimary
     public Customer getCustomerByPetId(Long petId){
-        return petsRepository.getOne(petId).getCustomer();
+        return petsRepository.getWithOwnerById(petId)
+                .orElseThrow(() -> EntityResolver.notFound("pet", Collections.singleton(petId)))
+                .getCustomer();
     }
 
     /**
-     * Saves a new or updated customer entity to the repository.
+     * Saves a new or updated customer entity to the repository. The listed pets are moved to the customer from their
+     * current owners: the moved pets are evicted from the pet cache, the customer and the previous owners from the
+     * owner cache, the schedules of the moved pets are relinked in the per-customer schedule view, and the versions of
+     * the customer and of the previous owners are bumped.
      *
      * @param customer the customer entity to be saved
      * @param petIds a list of IDs of the pets to be associated with the customer
      * @return the saved customer entity
+     * @throws EntityNotFoundException if any of the pets does not exist
      */
     public Customer saveCustomer(Customer customer, List<Long> petIds) {
-        List<Pet> pets = new LinkedList<>();
+        ChangeEventDTO.Action action = customer.getId() == 0 ? ChangeEventDTO.Action.CREATED : ChangeEventDTO.Action.UPDATED;
+        Customer savedCustomer = customersRepository.save(customer);
+        changeLog.record(ChangeEventDTO.Entity.CUSTOMER, action, savedCustomer.getId());
+        Set<Long> changedCustomerIds = new HashSet<>();
+        changedCustomerIds.add(savedCustomer.getId());
         if (petIds != null && !petIds.isEmpty()) {
-            pets = petsRepository.findAllById(petIds);
+            Map<Long, Pet> resolved = entityResolver.pets(petIds);
+            Set<Long> movedPetIds = new HashSet<>();
+            for (Long petId : petIds) {
+                Pet pet = resolved.get(petId);
+                if (pet.getCustomer().getId() != savedCustomer.getId()) {
+                    changedCustomerIds.add(pet.getCustomer().getId());
+                    movedPetIds.add(petId);
+                }
+                savedCustomer.addPet(pet);
+                changeLog.record(ChangeEventDTO.Entity.PET, ChangeEventDTO.Action.UPDATED, petId);
+            }
+            customerScheduleView.relink(movedPetIds);
+            ownerCaches.evictPets(movedPetIds);
+        }
+        if (action == ChangeEventDTO.Action.UPDATED || changedCustomerIds.size() > 1) {
+            ownerCaches.evictOwners(changedCustomerIds);
         }
-        customer.setPets(pets);
-        return customersRepository.save(customer);
+        versions.customersChanged(changedCustomerIds);
+        return savedCustomer;
     }
 }
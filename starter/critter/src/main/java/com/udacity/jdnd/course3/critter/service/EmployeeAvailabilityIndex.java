@@ -0,0 +1,154 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EnumSetConverter;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of employee availability.
+ *
+ * Each employee's working days and skills are packed into one int mask (the stored day mask in the low 7 bits, the
+ * stored skill mask above them), and one bitset per weekday and per skill holds the ids of the employees that have
+ * that bit. Finding the employees available for a service is then a bitwise AND of a few bitsets, with no database
+ * round trip.
+ *
+ * Employee ids are bit positions, so they must fit in an int; an employee with a larger id is rejected when it is
+ * put, before its transaction commits.
+ */
+@Component
+public class EmployeeAvailabilityIndex {
+    private static final DayOfWeek[] DAYS = DayOfWeek.values();
+    private static final EmployeeSkill[] SKILLS = EmployeeSkill.values();
+
+    /**
+     * Employee ids available on each weekday, indexed by {@link DayOfWeek#ordinal()}
+     */
+    private final BitSet[] byDay = new BitSet[DAYS.length];
+
+    /**
+     * Employee ids having each skill, indexed by {@link EmployeeSkill#ordinal()}
+     */
+    private final BitSet[] bySkill = new BitSet[SKILLS.length];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public EmployeeAvailabilityIndex() {
+        for (int i = 0; i < byDay.length; i++) {
+            byDay[i] = new BitSet();
+        }
+        for (int i = 0; i < bySkill.length; i++) {
+            bySkill[i] = new BitSet();
+        }
+    }
+
+    /**
+     * Packs a set of working days and a set of skills into a single mask.
+     * @param days the days available, may be null
+     * @param skills the skills, may be null
+     * @return the packed mask
+     */
+    static int pack(Set<DayOfWeek> days, Set<EmployeeSkill> skills) {
+        return EnumSetConverter.mask(days) | EnumSetConverter.mask(skills) << DAYS.length;
+    }
+
+    /**
+     * Adds or refreshes an employee in the index once the surrounding transaction commits.
+     * @param employee the saved employee
+     * @throws ArithmeticException if the id of the employee does not fit in an int
+     */
+    public void put(Employee employee) {
+        putAll(Collections.singletonList(employee));
+    }
+
+    /**
+     * Adds or refreshes employees in the index once the surrounding transaction commits, or right away when no
+     * transaction is active, so that no other transaction plans with an employee that may still be rolled back.
+     * @param employees the saved employees
+     * @throws ArithmeticException if the id of any employee does not fit in an int
+     */
+    public void putAll(Collection<Employee> employees) {
+        Map<Long, Integer> updates = new LinkedHashMap<>();
+        for (Employee employee : employees) {
+            //fails inside the transaction, rather than once it has committed
+            Math.toIntExact(employee.getId());
+            updates.put(employee.getId(), pack(employee.getDaysAvailable(), employee.getSkills()));
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                updates.forEach(this::apply);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Replaces the whole index with the given employees.
+     * @param employees every persisted employee
+     */
+    public void rebuild(Collection<Employee> employees) {
+        lock.writeLock().lock();
+        try {
+            for (BitSet day : byDay) {
+                day.clear();
+            }
+            for (BitSet skill : bySkill) {
+                skill.clear();
+            }
+            for (Employee employee : employees) {
+                apply(employee.getId(), pack(employee.getDaysAvailable(), employee.getSkills()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the employees that work on the given day and have all of the given skills.
+     * @param day the day on which the service is required
+     * @param skills the skills required for the service
+     * @return a new bitset of the matching employee ids, which the caller may modify
+     */
+    public BitSet findMatching(DayOfWeek day, Set<EmployeeSkill> skills) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = (BitSet) byDay[day.ordinal()].clone();
+            if (skills != null) {
+                for (EmployeeSkill skill : skills) {
+                    matches.and(bySkill[skill.ordinal()]);
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets or clears an employee's bit in every bitset according to its packed mask. Called with the write lock held.
+     */
+    private void apply(long employeeId, int mask) {
+        int bit = Math.toIntExact(employeeId);
+        for (int i = 0; i < byDay.length; i++) {
+            byDay[i].set(bit, (mask & (1 << i)) != 0);
+        }
+        for (int i = 0; i < bySkill.length; i++) {
+            bySkill[i].set(bit, (mask & (1 << (DAYS.length + i))) != 0);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of the employees that already have a schedule on a given date.
+ *
+ * Each date maps to a bitset of booked employee ids, so checking whether a candidate is free is a single bit test
+ * instead of a join across the schedule tables.
+ *
+ * Only dates from today on are kept: bookings before today are not loaded, and the dates that have passed are dropped
+ * at most once a day, on the first claim of the day, so the index stays the size of the upcoming bookings. Past dates
+ * can still be booked, and are then only checked by the database.
+ *
+ * The index is held by each instance of the application and only sees the bookings made through it, plus those
+ * loaded at startup. With several instances, a booking made through another one is missed here until the next
+ * restart: availability may then offer an employee booked elsewhere, but the claim is still rejected on write by the
+ * unique constraint of the {@link com.udacity.jdnd.course3.critter.entity.EmployeeSlot} table, which all instances
+ * share.
+ */
+@Component
+public class EmployeeBookingIndex {
+    /**
+     * Bookings held on each date, in date order so that the past dates can be dropped at once
+     */
+    private final NavigableMap<LocalDate, DateBookings> bookings = new TreeMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Clock clock;
+
+    /**
+     * Date the past dates were last dropped on
+     */
+    private LocalDate prunedOn = LocalDate.MIN;
+
+    /**
+     * Creates an index pruned by the system clock.
+     */
+    public EmployeeBookingIndex() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates an index pruned by the given clock.
+     * @param clock clock telling the current date
+     */
+    public EmployeeBookingIndex(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Books employees on a date unless any of them is booked on it already. The check and the booking are made under
+     * one lock, so of two concurrent claims of the same employee and date exactly one succeeds, while claims of other
+     * slots only wait for the few bit operations of the other. If the surrounding transaction rolls back, the
+     * bookings are released again.
+     * @param date the date of the schedule
+     * @param employeeIds the ids of the employees on the schedule, without duplicates
+     * @throws ScheduleConflictException if any of the employees is booked on the date already
+     */
+    public void claim(LocalDate date, Collection<Long> employeeIds) {
+        if (date == null || employeeIds == null || employeeIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            prune();
+            DateBookings dateBookings = bookings.get(date);
+            if (dateBookings != null) {
+                List<Long> booked = employeeIds.stream()
+                        .filter(employeeId -> dateBookings.employees.get(Math.toIntExact(employeeId)))
+                        .collect(Collectors.toList());
+                if (!booked.isEmpty()) {
+                    throw new ScheduleConflictException(date, booked);
+                }
+            }
+            update(date, employeeIds, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        TransactionCallbacks.afterRollback(() -> update(date, employeeIds, -1));
+    }
+
+    /**
+     * Records a booking loaded from the database, outside of any transaction bookkeeping. Bookings before today are
+     * ignored.
+     * @param date the date of the schedule
+     * @param employeeId the id of the booked employee
+     */
+    public void load(LocalDate date, long employeeId) {
+        if (date.isBefore(LocalDate.now(clock))) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            bookings.computeIfAbsent(date, d -> new DateBookings()).add(Math.toIntExact(employeeId), 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the employees booked on a date.
+     * @param date the date to check
+     * @return a copy of the bitset of booked employee ids, empty if nobody is booked
+     */
+    public BitSet bookedOn(LocalDate date) {
+        lock.readLock().lock();
+        try {
+            DateBookings dateBookings = bookings.get(date);
+            return dateBookings == null ? new BitSet() : (BitSet) dateBookings.employees.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the dates before today, unless that was done today already. Called with the write lock held.
+     */
+    private void prune() {
+        LocalDate today = LocalDate.now(clock);
+        if (today.isAfter(prunedOn)) {
+            bookings.headMap(today).clear();
+            prunedOn = today;
+        }
+    }
+
+    private void update(LocalDate date, Collection<Long> employeeIds, int delta) {
+        lock.writeLock().lock();
+        try {
+            DateBookings dateBookings = bookings.computeIfAbsent(date, d -> new DateBookings());
+            for (Long employeeId : employeeIds) {
+                dateBookings.add(Math.toIntExact(employeeId), delta);
+            }
+            if (dateBookings.employees.isEmpty()) {
+                bookings.remove(date);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The employees booked on one date. An employee may have more than one schedule on the same date, so the
+     * number of bookings is tracked and the bit only cleared once the last one is released.
+     */
+    private static final class DateBookings {
+        private final BitSet employees = new BitSet();
+        private final Map<Integer, Integer> counts = new HashMap<>();
+
+        private void add(int employeeId, int delta) {
+            int count = counts.getOrDefault(employeeId, 0) + delta;
+            if (count > 0) {
+                counts.put(employeeId, count);
+                employees.set(employeeId);
+            } else {
+                counts.remove(employeeId);
+                employees.clear(employeeId);
+            }
+        }
+    }
+}
@@ -1,16 +1,31 @@
 package com.udacity.jdnd.course3.critter.service;
 
+import com.udacity.jdnd.course3.critter.config.CacheConfig;
+import com.udacity.jdnd.course3.critter.config.ReadFromPrimary;
+import com.udacity.jdnd.course3.critter.dto.ChangeEventDTO;
 import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EnumSetConverter;
 import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
 import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import javax.persistence.EntityNotFoundException;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,52 +37,180 @@ public class EmployeeService {
     @Autowired
     private final EmployeeRepository employeesRepository;
 
+    /**
+     * In-memory index used to plan availability for many slots without going to the database
+     */
+    @Autowired
+    private final EmployeeAvailabilityIndex availabilityIndex;
+
+    /**
+     * In-memory index of the employees already booked on each date
+     */
+    @Autowired
+    private final EmployeeBookingIndex bookingIndex;
+
+    /**
+     * Finder of the employees taken by recurring schedules
+     */
+    @Autowired
+    private final RecurringBookings recurringBookings;
+
+    /**
+     * Resolver used to load employees by id
+     */
+    @Autowired
+    private final EntityResolver entityResolver;
+
+    /**
+     * Outbox the employee changes are recorded in
+     */
+    @Autowired
+    private final ChangeLog changeLog;
+
+    /**
+     * Versions of the employees, bumped when they change
+     */
+    @Autowired
+    private final AggregateVersions versions;
+
     /**
      * Creates an instance of EmployeeService
      * @param employeesRepository The EmployeeRepository used to interact with the employee table
+     * @param availabilityIndex The index of employee skills and working days
+     * @param bookingIndex The index of employees booked on each date
+     * @param recurringBookings The finder of the employees taken by recurring schedules
+     * @param entityResolver The resolver of employee ids
+     * @param changeLog The outbox the employee changes are recorded in
+     * @param versions The versions of the employees
      */
-    public EmployeeService(EmployeeRepository employeesRepository) {
+    public EmployeeService(EmployeeRepository employeesRepository, EmployeeAvailabilityIndex availabilityIndex,
+                           EmployeeBookingIndex bookingIndex, RecurringBookings recurringBookings, EntityResolver entityResolver, ChangeLog changeLog,
+                           AggregateVersions versions) {
         this.employeesRepository = employeesRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.bookingIndex = bookingIndex;
+        this.recurringBookings = recurringBookings;
+        this.entityResolver = entityResolver;
+        this.changeLog = changeLog;
+        this.versions = versions;
+    }
+
+    /**
+     * Loads every stored employee into the availability index once the application has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAvailabilityIndex() {
+        availabilityIndex.rebuild(employeesRepository.getAllWithAvailability());
     }
 
     /**
-     * Retrieves an employee from the database by its ID
+     * Retrieves an employee by its ID, with its skills and days available loaded. Employees are cached, so repeated
+     * lookups of the same employee do not reach the database. The first lookup reads the primary, not the replica.
      * @param employeeId The ID of the employee to retrieve
      * @return The employee with the specified ID
+     * @throws EntityNotFoundException if the employee does not exist
      */
+    @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.EMPLOYEES)
+    @ReadFromPrimary
     public Employee getEmployeeById(Long employeeId) {
-        return employeesRepository.getOne(employeeId);
+        return entityResolver.employee(employeeId);
     }
 
     /**
-     * Retrieves a list of employees that are available to perform the specified service on the specified date
+     * Retrieves a list of employees that are available to perform the specified service on the specified date.
+     * Skills and working days are matched in one query against the bitmask columns of the employees, so employees
+     * added through any instance are found; employees who already have a schedule on that date, or an occurrence of a
+     * recurring schedule, are then left out.
      * @param date The date on which the service is required
      * @param skills The skills required for the service
      * @return A list of employees available for the service
      */
+    @Transactional(readOnly = true)
     public List<Employee> getEmployeesForService(LocalDate date, Set<EmployeeSkill> skills){
-        return employeesRepository.getAllByDaysAvailableContains(date.getDayOfWeek()).stream()
-                .filter(employee -> employee.getSkills().containsAll(skills))
+        BitSet booked = bookingIndex.bookedOn(date);
+        booked.or(recurringBookings.bookedOn(date));
+        return employeesRepository.getAllAvailable(EnumSetConverter.mask(skills), EnumSetConverter.mask(date.getDayOfWeek()))
+                .stream()
+                .filter(employee -> !booked.get(Math.toIntExact(employee.getId())))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Plans which employees fill each of a list of demand slots, without booking them. Candidates come from the
+     * in-memory indexes, computed once per weekday and skill set, and the slots of each date are matched together so
+     * that no employee is planned twice on the same date or planned on a date they are already booked. The
+     * occurrences of recurring schedules within the planned dates are read with one query.
+     * @param dates The date of each slot
+     * @param skills The skills required in each slot
+     * @param headcounts The number of employees wanted in each slot
+     * @return The ids of the employees planned for each slot, in the same order as the slots. A slot gets fewer
+     * employees than wanted when not enough are available.
+     */
+    @Transactional(readOnly = true)
+    public List<List<Long>> planAvailability(List<LocalDate> dates, List<Set<EmployeeSkill>> skills, List<Integer> headcounts) {
+        Map<DayOfWeek, Map<Set<EmployeeSkill>, BitSet>> matching = new HashMap<>();
+        TreeMap<LocalDate, List<Integer>> slotsByDate = new TreeMap<>();
+        for (int slot = 0; slot < dates.size(); slot++) {
+            slotsByDate.computeIfAbsent(dates.get(slot), date -> new ArrayList<>()).add(slot);
+        }
+
+        List<List<Long>> plan = new ArrayList<>(Collections.nCopies(dates.size(), Collections.emptyList()));
+        if (slotsByDate.isEmpty()) {
+            return plan;
+        }
+        Map<LocalDate, BitSet> recurring = recurringBookings.bookedBetween(slotsByDate.firstKey(), slotsByDate.lastKey());
+        slotsByDate.forEach((date, slots) -> {
+            BitSet booked = bookingIndex.bookedOn(date);
+            booked.or(recurring.getOrDefault(date, new BitSet()));
+            List<BitSet> candidates = new ArrayList<>(slots.size());
+            List<Integer> wanted = new ArrayList<>(slots.size());
+            for (int slot : slots) {
+                BitSet slotCandidates = (BitSet) matching
+                        .computeIfAbsent(date.getDayOfWeek(), day -> new HashMap<>())
+                        .computeIfAbsent(skills.get(slot), required -> availabilityIndex.findMatching(date.getDayOfWeek(), required))
+                        .clone();
+                slotCandidates.andNot(booked);
+                candidates.add(slotCandidates);
+                wanted.add(Math.max(0, headcounts.get(slot)));
+            }
+            List<List<Long>> assigned = SlotMatcher.match(candidates, wanted);
+            for (int i = 0; i < slots.size(); i++) {
+                plan.set(slots.get(i), assigned.get(i));
+            }
+        });
+        return plan;
+    }
+
     /**
      * Saves an employee to the database
      * @param employee The employee to save
      * @return The saved employee
      */
+    @CacheEvict(cacheNames = CacheConfig.EMPLOYEES, key = "#result.id")
     public Employee saveEmployee(Employee employee) {
-        return employeesRepository.save(employee);
+        ChangeEventDTO.Action action = employee.getId() == 0 ? ChangeEventDTO.Action.CREATED : ChangeEventDTO.Action.UPDATED;
+        Employee savedEmployee = employeesRepository.save(employee);
+        availabilityIndex.put(savedEmployee);
+        changeLog.record(ChangeEventDTO.Entity.EMPLOYEE, action, savedEmployee.getId());
+        if (action == ChangeEventDTO.Action.UPDATED) {
+            versions.employeesChanged(Collections.singleton(savedEmployee.getId()));
+        }
+        return savedEmployee;
     }
 
     /**
      * Sets the availability of an employee
      * @param days The days the employee is available
      * @param employeeId The ID of the employee whose availability is being set
+     * @throws EntityNotFoundException if the employee does not exist
      */
+    @CacheEvict(cacheNames = CacheConfig.EMPLOYEES, key = "#employeeId")
     public void setEmployeeAvailability(Set<DayOfWeek> days, Long employeeId) {
-        Employee employee = employeesRepository.getOne(employeeId);
+        Employee employee = entityResolver.employee(employeeId);
         employee.setDaysAvailable(days);
-        employeesRepository.save(employee);
+        availabilityIndex.put(employeesRepository.save(employee));
+        changeLog.record(ChangeEventDTO.Entity.EMPLOYEE, ChangeEventDTO.Action.UPDATED, employeeId);
+        versions.employeesChanged(Collections.singleton(employeeId));
     }
 }
\ No newline at end of file
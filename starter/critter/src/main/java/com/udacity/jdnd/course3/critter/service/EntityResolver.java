@@ -0,0 +1,201 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Turns entity ids into loaded entities for the services.
+ *
+ * All the ids of one entity type are loaded with a single IN query, together with the associations their DTOs are
+ * built from, so nothing is lazily loaded afterwards. Entities already resolved in the current transaction, and
+ * still managed by it, are reused instead of being queried again. Any id that does not exist fails the call straight
+ * away with an {@link EntityNotFoundException}, which the controllers answer with 404 Not Found.
+ *
+ * The entities returned are the managed instances, not detached copies or projections: the services link them into
+ * the schedules, pets and customers they save, which needs entities of the current persistence context. Only the
+ * returned maps are unmodifiable. Inside a read-only transaction the session loads the entities read-only, so a
+ * change made to one while building a response is never flushed; inside a read-write transaction a change to a
+ * resolved entity is written on commit, so callers only change them when that is the point of the call.
+ */
+@Component
+public class EntityResolver {
+    @Autowired
+    private final PetRepository petsRepository;
+
+    @Autowired
+    private final EmployeeRepository employeesRepository;
+
+    @Autowired
+    private final CustomerRepository customersRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Constructor with dependencies.
+     * @param petsRepository repository for pet entities
+     * @param employeesRepository repository for employee entities
+     * @param customersRepository repository for customer entities
+     */
+    public EntityResolver(PetRepository petsRepository, EmployeeRepository employeesRepository,
+                          CustomerRepository customersRepository) {
+        this.petsRepository = petsRepository;
+        this.employeesRepository = employeesRepository;
+        this.customersRepository = customersRepository;
+    }
+
+    /**
+     * Creates the exception thrown for ids that do not exist.
+     * @param type the name of the entity type
+     * @param ids the missing ids
+     * @return the exception to throw
+     */
+    static EntityNotFoundException notFound(String type, Collection<Long> ids) {
+        return new EntityNotFoundException("Unknown " + type + " ids: " + ids);
+    }
+
+    /**
+     * Resolves pets, with their owners.
+     * @param petIds the ids to resolve
+     * @return an unmodifiable map of the pets by id
+     * @throws EntityNotFoundException if any id does not exist
+     */
+    public Map<Long, Pet> pets(Collection<Long> petIds) {
+        return resolve(Pet.class, "pet", petIds, petsRepository::getAllByIdIn, Pet::getId);
+    }
+
+    /**
+     * Resolves employees, with their skills and days available.
+     * @param employeeIds the ids to resolve
+     * @return an unmodifiable map of the employees by id
+     * @throws EntityNotFoundException if any id does not exist
+     */
+    public Map<Long, Employee> employees(Collection<Long> employeeIds) {
+        return resolve(Employee.class, "employee", employeeIds, employeesRepository::getByIdIn, Employee::getId);
+    }
+
+    /**
+     * Resolves employees and locks their rows until the end of the transaction. The employees are read again even if
+     * they were resolved earlier in the transaction, so that the lock is always taken.
+     * @param employeeIds the ids to resolve
+     * @return an unmodifiable map of the employees by id
+     * @throws EntityNotFoundException if any id does not exist
+     */
+    public Map<Long, Employee> lockedEmployees(Collection<Long> employeeIds) {
+        if (employeeIds != null) {
+            transactionCache(Employee.class).keySet().removeAll(employeeIds);
+        }
+        return resolve(Employee.class, "employee", employeeIds, employeesRepository::lockAllByIdIn, Employee::getId);
+    }
+
+    /**
+     * Resolves customers, with their pets.
+     * @param customerIds the ids to resolve
+     * @return an unmodifiable map of the customers by id
+     * @throws EntityNotFoundException if any id does not exist
+     */
+    public Map<Long, Customer> customers(Collection<Long> customerIds) {
+        return resolve(Customer.class, "customer", customerIds, customersRepository::getAllByIdIn, Customer::getId);
+    }
+
+    /**
+     * Resolves a single pet.
+     * @param petId the id to resolve
+     * @return the pet
+     * @throws EntityNotFoundException if the id does not exist
+     */
+    public Pet pet(long petId) {
+        return pets(Collections.singleton(petId)).get(petId);
+    }
+
+    /**
+     * Resolves a single employee.
+     * @param employeeId the id to resolve
+     * @return the employee
+     * @throws EntityNotFoundException if the id does not exist
+     */
+    public Employee employee(long employeeId) {
+        return employees(Collections.singleton(employeeId)).get(employeeId);
+    }
+
+    /**
+     * Resolves a single customer.
+     * @param customerId the id to resolve
+     * @return the customer
+     * @throws EntityNotFoundException if the id does not exist
+     */
+    public Customer customer(long customerId) {
+        return customers(Collections.singleton(customerId)).get(customerId);
+    }
+
+    private <T> Map<Long, T> resolve(Class<T> type, String typeName, Collection<Long> ids,
+                                     Function<Collection<Long>, List<T>> finder, ToLongFunction<T> idOf) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Object> resolved = transactionCache(type);
+        resolved.values().removeIf(entity -> !entityManager.contains(entity));
+        Set<Long> missing = new TreeSet<>(ids);
+        missing.removeAll(resolved.keySet());
+        if (!missing.isEmpty()) {
+            for (T entity : finder.apply(missing)) {
+                resolved.put(idOf.applyAsLong(entity), entity);
+            }
+            missing.removeAll(resolved.keySet());
+            if (!missing.isEmpty()) {
+                throw notFound(typeName, missing);
+            }
+        }
+
+        Map<Long, T> entities = new HashMap<>();
+        for (Long id : ids) {
+            entities.put(id, type.cast(resolved.get(id)));
+        }
+        return Collections.unmodifiableMap(entities);
+    }
+
+    /**
+     * Gets the entities of a type already resolved in the current transaction. Outside of a transaction nothing is
+     * reused, as the entities would no longer be managed.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, Object> transactionCache(Class<?> type) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new HashMap<>();
+        }
+        Map<Class<?>, Map<Long, Object>> cache = (Map<Class<?>, Map<Long, Object>>) TransactionSynchronizationManager.getResource(this);
+        if (cache == null) {
+            Map<Class<?>, Map<Long, Object>> newCache = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, newCache);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(EntityResolver.this);
+                }
+            });
+            cache = newCache;
+        }
+        return cache.computeIfAbsent(type, t -> new HashMap<>());
+    }
+}
@@ -0,0 +1,39 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Formats accepted by the bulk imports.
+ */
+public enum ImportFormat {
+    /**
+     * Comma-separated values with a header line naming the columns. The elements of a list column are separated
+     * by semicolons, for example {@code MONDAY;FRIDAY}.
+     */
+    CSV,
+
+    /**
+     * Newline-delimited JSON, one object per line.
+     */
+    NDJSON;
+
+    public static final String CSV_VALUE = "text/csv";
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    /**
+     * Gets the format of a request body from its content type.
+     * @param contentType the content type of the body
+     * @return the format of the body
+     * @throws IllegalArgumentException if the content type is not an import format
+     */
+    public static ImportFormat of(String contentType) {
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        if (mediaType.isCompatibleWith(MediaType.parseMediaType(CSV_VALUE))) {
+            return CSV;
+        }
+        if (mediaType.isCompatibleWith(MediaType.parseMediaType(NDJSON_VALUE))) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Unsupported import format " + contentType);
+    }
+}
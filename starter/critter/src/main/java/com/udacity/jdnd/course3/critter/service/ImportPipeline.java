@@ -0,0 +1,269 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.dto.ImportReportDTO;
+import com.udacity.jdnd.course3.critter.dto.LongIdList;
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs the rows of an import file through three stages connected by bounded queues: parsing on the calling thread,
+ * then validation and batch writing on threads of their own. When a stage falls behind, the queue in front of it
+ * fills up and the stage feeding it blocks, so only a few batches of rows are in memory whatever the file size.
+ *
+ * A row that cannot be parsed, fails validation or is refused by the writer is reported with its line number and
+ * the import carries on with the next one.
+ * @param <T> the type each row is parsed into
+ */
+final class ImportPipeline<T> {
+    private static final Logger log = LoggerFactory.getLogger(ImportPipeline.class);
+
+    /**
+     * Number of rows between two progress log lines
+     */
+    private static final long LOG_EVERY = 10_000;
+
+    private final String entity;
+    private final int batchSize;
+    private final int maxErrors;
+    private final ExecutorService executor;
+    private final Counter importedRows;
+    private final Counter rejectedRows;
+
+    private final Row<T> endOfRows = new Row<>(-1, null);
+    private final List<Row<T>> endOfBatches = new ArrayList<>();
+
+    private final BlockingQueue<Row<T>> rows;
+    private final BlockingQueue<List<Row<T>>> batches;
+
+    private final LongIdList.Builder ids = new LongIdList.Builder();
+    private final List<ImportReportDTO.RowError> errors = new ArrayList<>();
+    private volatile long rowsRead;
+    private volatile long rowsImported;
+    private long rowsRejected;
+
+    /**
+     * Creates a pipeline for one import.
+     * @param entity name of the imported entity, for the log
+     * @param batchSize number of rows written per transaction
+     * @param queuedBatches number of validated batches that may wait for the writer
+     * @param maxErrors maximum number of row errors listed in the report
+     * @param executor executor running the validation and writing stages
+     * @param importedRows counter of the rows imported
+     * @param rejectedRows counter of the rows rejected
+     */
+    ImportPipeline(String entity, int batchSize, int queuedBatches, int maxErrors, ExecutorService executor,
+                   Counter importedRows, Counter rejectedRows) {
+        this.entity = entity;
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+        this.executor = executor;
+        this.importedRows = importedRows;
+        this.rejectedRows = rejectedRows;
+        rows = new ArrayBlockingQueue<>(batchSize * 2);
+        batches = new ArrayBlockingQueue<>(queuedBatches);
+    }
+
+    /**
+     * Imports every row of a file.
+     * @param source the parser of the file
+     * @param validator checks a parsed row, returning why it is invalid or null if it is valid
+     * @param writer writes a batch of valid rows in one transaction
+     * @return the report of the import
+     * @throws IOException if the file cannot be read
+     */
+    ImportReportDTO run(RowSource<T> source, Function<T, String> validator, BatchWriter<T> writer) throws IOException {
+        Future<?> writing = executor.submit(() -> write(writer));
+        Future<?> validating = executor.submit(() -> validate(validator, writing));
+        try {
+            try {
+                for (Row<T> row = source.next(); row != null; row = source.next()) {
+                    rowsRead++;
+                    put(rows, row, validating);
+                }
+            } finally {
+                put(rows, endOfRows, validating);
+            }
+            await(validating);
+            await(writing);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import of " + entity + " interrupted", e);
+        } finally {
+            validating.cancel(true);
+            writing.cancel(true);
+        }
+        log.info("Import of {} done: {} rows read, {} imported, {} rejected", entity, rowsRead, rowsImported, rowsRejected);
+
+        ImportReportDTO report = new ImportReportDTO();
+        report.setRowsRead(rowsRead);
+        report.setRowsImported(rowsImported);
+        report.setRowsRejected(rowsRejected);
+        report.setIds(ids.build());
+        errors.sort(Comparator.comparingLong(ImportReportDTO.RowError::getLine));
+        report.setErrors(errors);
+        return report;
+    }
+
+    /**
+     * Validation stage: checks each parsed row and groups the valid ones into batches.
+     */
+    private Void validate(Function<T, String> validator, Future<?> writing) throws InterruptedException {
+        List<Row<T>> batch = new ArrayList<>(batchSize);
+        try {
+            for (Row<T> row = rows.take(); row != endOfRows; row = rows.take()) {
+                if (row.error == null) {
+                    row.error = validator.apply(row.value);
+                }
+                if (row.error != null) {
+                    reject(row.line, row.error);
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    put(batches, batch, writing);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                put(batches, batch, writing);
+            }
+        } finally {
+            put(batches, endOfBatches, writing);
+        }
+        return null;
+    }
+
+    /**
+     * Writing stage: writes each batch in a transaction of its own. If a batch fails as a whole, each of its rows
+     * is rejected with the reason and the next batch is written.
+     */
+    private Void write(BatchWriter<T> writer) throws InterruptedException {
+        for (List<Row<T>> batch = batches.take(); batch != endOfBatches; batch = batches.take()) {
+            try {
+                writer.write(batch);
+            } catch (RuntimeException e) {
+                log.warn("Import of {} failed to write a batch of {} rows", entity, batch.size(), e);
+                for (Row<T> row : batch) {
+                    row.error = "Not imported: " + e.getMessage();
+                }
+            }
+            long before = rowsImported;
+            for (Row<T> row : batch) {
+                if (row.error != null) {
+                    reject(row.line, row.error);
+                } else {
+                    ids.add(row.id);
+                    rowsImported++;
+                    importedRows.increment();
+                }
+            }
+            if (rowsImported / LOG_EVERY > before / LOG_EVERY) {
+                log.info("Import of {}: {} rows read, {} imported", entity, rowsRead, rowsImported);
+            }
+        }
+        return null;
+    }
+
+    private synchronized void reject(long line, String message) {
+        rowsRejected++;
+        rejectedRows.increment();
+        if (errors.size() < maxErrors) {
+            errors.add(new ImportReportDTO.RowError(line, message));
+        }
+    }
+
+    /**
+     * Puts an element in a queue, waiting for room as long as the stage taking from it is still running.
+     */
+    private static <E> void put(BlockingQueue<E> queue, E element, Future<?> consumer) throws InterruptedException {
+        while (!queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+            if (consumer.isDone()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for a stage to finish, rethrowing whatever stopped it.
+     */
+    private static void await(Future<?> stage) throws InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * One row of an import file.
+     * @param <T> the type the row is parsed into
+     */
+    static final class Row<T> {
+        final long line;
+        final T value;
+        /**
+         * Why the row is rejected, null while it is not
+         */
+        String error;
+        /**
+         * Id of the entity written from the row
+         */
+        long id;
+
+        Row(long line, T value) {
+            this.line = line;
+            this.value = value;
+        }
+
+        static <T> Row<T> rejected(long line, String error) {
+            Row<T> row = new Row<>(line, null);
+            row.error = error;
+            return row;
+        }
+    }
+
+    /**
+     * Parser of an import file.
+     * @param <T> the type each row is parsed into
+     */
+    interface RowSource<T> {
+        /**
+         * Reads the next row.
+         * @return the row, rejected if it could not be parsed, or null at the end of the file
+         * @throws IOException if the file cannot be read
+         */
+        Row<T> next() throws IOException;
+    }
+
+    /**
+     * Writer of batches of valid rows.
+     * @param <T> the type of the rows
+     */
+    interface BatchWriter<T> {
+        /**
+         * Writes a batch in one transaction, setting the id of each row written and the error of each row refused.
+         * @param batch the rows to write
+         */
+        void write(List<Row<T>> batch);
+    }
+}
@@ -0,0 +1,311 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.udacity.jdnd.course3.critter.dto.ChangeEventDTO;
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.dto.ImportReportDTO;
+import com.udacity.jdnd.course3.critter.pet.PetDTO;
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Imports customers, pets and employees in bulk from CSV or NDJSON files.
+ *
+ * Each file is streamed through an {@link ImportPipeline}: rows are parsed as they are read, validated, and written
+ * {@code critter.import.batch-size} at a time, each batch in a transaction of its own, so a failed import keeps the
+ * batches written before it. Rows that cannot be imported are reported, the first {@code critter.import.max-errors}
+ * of them with their line number and reason. The rows imported and rejected are counted in the
+ * {@code critter.import.rows} metric.
+ */
+@Service
+public class ImportService {
+    @Autowired
+    private final CustomerRepository customersRepository;
+
+    @Autowired
+    private final EmployeeAvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    private final ChangeLog changeLog;
+
+    @Autowired
+    private final AggregateVersions versions;
+
+    @Autowired
+    private final OwnerCaches ownerCaches;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+    private final CsvMapper csvMapper;
+    private final ExecutorService executor;
+
+    private final int batchSize;
+    private final int queuedBatches;
+    private final int maxErrors;
+
+    /**
+     * Constructor with dependencies.
+     * @param customersRepository repository for customer entities
+     * @param availabilityIndex index imported employees are added to
+     * @param objectMapper mapper the NDJSON rows are read with
+     * @param meterRegistry registry the import metrics are published to
+     * @param changeLog outbox the imported entities are recorded in
+     * @param versions versions of the customers and employees, bumped for the owners of imported pets
+     * @param ownerCaches evictor of the cached owners of the imported pets
+     * @param transactionManager manager of the transaction each batch is written in
+     * @param batchSize number of rows written per transaction
+     * @param queuedBatches number of validated batches that may wait to be written
+     * @param maxErrors maximum number of row errors listed in a report
+     */
+    public ImportService(CustomerRepository customersRepository, EmployeeAvailabilityIndex availabilityIndex,
+                         ObjectMapper objectMapper, MeterRegistry meterRegistry, ChangeLog changeLog,
+                         AggregateVersions versions, OwnerCaches ownerCaches,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${critter.import.batch-size:${critter.jdbc.batch-size:50}}") int batchSize,
+                         @Value("${critter.import.queued-batches:4}") int queuedBatches,
+                         @Value("${critter.import.max-errors:100}") int maxErrors) {
+        this.customersRepository = customersRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.changeLog = changeLog;
+        this.versions = versions;
+        this.ownerCaches = ownerCaches;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.queuedBatches = queuedBatches;
+        this.maxErrors = maxErrors;
+        csvMapper = new CsvMapper();
+        csvMapper.registerModule(new JavaTimeModule());
+        csvMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("critter-import-"));
+    }
+
+    /**
+     * Stops the threads of the imports still running.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Imports customers. Their pets are imported afterwards, naming each customer as the owner.
+     * @param in the file to import
+     * @param format the format of the file
+     * @return the report of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReportDTO importCustomers(InputStream in, ImportFormat format) throws IOException {
+        return run("customer", in, format, CustomerDTO.class, ImportService::validateCustomer, this::writeCustomers);
+    }
+
+    /**
+     * Imports pets, linking each one to its owner. Since this changes the pet lists of the owners, the owners of each
+     * batch are evicted from the owner cache when the batch is written.
+     * @param in the file to import
+     * @param format the format of the file
+     * @return the report of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReportDTO importPets(InputStream in, ImportFormat format) throws IOException {
+        return run("pet", in, format, PetDTO.class, ImportService::validatePet, this::writePets);
+    }
+
+    /**
+     * Imports employees and adds them to the availability index.
+     * @param in the file to import
+     * @param format the format of the file
+     * @return the report of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReportDTO importEmployees(InputStream in, ImportFormat format) throws IOException {
+        return run("employee", in, format, EmployeeDTO.class, ImportService::validateEmployee, this::writeEmployees);
+    }
+
+    private <T> ImportReportDTO run(String entity, InputStream in, ImportFormat format, Class<T> type,
+                                    Function<T, String> validator, ImportPipeline.BatchWriter<T> writer) throws IOException {
+        ImportPipeline<T> pipeline = new ImportPipeline<>(entity, batchSize, queuedBatches, maxErrors, executor,
+                meterRegistry.counter("critter.import.rows", "entity", entity, "outcome", "imported"),
+                meterRegistry.counter("critter.import.rows", "entity", entity, "outcome", "rejected"));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return pipeline.run(rowSource(reader, format, type), validator, writer);
+        }
+    }
+
+    /**
+     * Parses a file line by line. Blank lines are skipped, and a CSV file starts with a header line naming the
+     * columns. Quoted CSV values cannot span lines.
+     */
+    private <T> ImportPipeline.RowSource<T> rowSource(BufferedReader reader, ImportFormat format, Class<T> type) {
+        return new ImportPipeline.RowSource<T>() {
+            private long line;
+            private ObjectReader rowReader = format == ImportFormat.NDJSON ? objectMapper.readerFor(type) : null;
+
+            @Override
+            public ImportPipeline.Row<T> next() throws IOException {
+                for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+                    line++;
+                    if (text.trim().isEmpty()) {
+                        continue;
+                    }
+                    if (rowReader == null) {
+                        rowReader = csvReader(text, type);
+                        continue;
+                    }
+                    try {
+                        return new ImportPipeline.Row<>(line, rowReader.readValue(text));
+                    } catch (JsonProcessingException e) {
+                        return ImportPipeline.Row.rejected(line, "Cannot parse row: " + e.getOriginalMessage());
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private ObjectReader csvReader(String header, Class<?> type) {
+        CsvSchema.Builder schema = CsvSchema.builder().setArrayElementSeparator(";");
+        for (String column : header.split(",")) {
+            schema.addColumn(column.trim());
+        }
+        return csvMapper.readerFor(type).with(schema.build());
+    }
+
+    private static String validateCustomer(CustomerDTO customer) {
+        if (isBlank(customer.getName())) {
+            return "name is required";
+        }
+        if (customer.getPetIds() != null && !customer.getPetIds().isEmpty()) {
+            return "petIds cannot be imported, import the pets with this customer as their ownerId instead";
+        }
+        return null;
+    }
+
+    private static String validatePet(PetDTO pet) {
+        if (isBlank(pet.getName())) {
+            return "name is required";
+        }
+        if (pet.getType() == null) {
+            return "type is required";
+        }
+        if (pet.getOwnerId() <= 0) {
+            return "ownerId is required";
+        }
+        return null;
+    }
+
+    private static String validateEmployee(EmployeeDTO employee) {
+        if (isBlank(employee.getName())) {
+            return "name is required";
+        }
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private void writeCustomers(List<ImportPipeline.Row<CustomerDTO>> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (ImportPipeline.Row<CustomerDTO> row : batch) {
+                Customer customer = new Customer();
+                customer.setName(row.value.getName());
+                customer.setPhoneNumber(row.value.getPhoneNumber());
+                customer.setNotes(row.value.getNotes());
+                entityManager.persist(customer);
+                row.id = customer.getId();
+                changeLog.record(ChangeEventDTO.Entity.CUSTOMER, ChangeEventDTO.Action.CREATED, customer.getId());
+            }
+        });
+    }
+
+    /**
+     * Writes a batch of pets: the owners are checked in one query and the pets, which carry their owner, are inserted
+     * in one JDBC batch.
+     */
+    private void writePets(List<ImportPipeline.Row<PetDTO>> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Long> ownerIds = new HashSet<>();
+            for (ImportPipeline.Row<PetDTO> row : batch) {
+                ownerIds.add(row.value.getOwnerId());
+            }
+            Set<Long> existingOwnerIds = new HashSet<>(customersRepository.getExistingIds(ownerIds));
+
+            for (ImportPipeline.Row<PetDTO> row : batch) {
+                if (!existingOwnerIds.contains(row.value.getOwnerId())) {
+                    row.error = "Owner " + row.value.getOwnerId() + " does not exist";
+                    continue;
+                }
+                Pet pet = new Pet();
+                pet.setType(row.value.getType());
+                pet.setName(row.value.getName());
+                pet.setBirthDate(row.value.getBirthDate());
+                pet.setNotes(row.value.getNotes());
+                pet.setCustomer(entityManager.getReference(Customer.class, row.value.getOwnerId()));
+                entityManager.persist(pet);
+                row.id = pet.getId();
+                changeLog.record(ChangeEventDTO.Entity.PET, ChangeEventDTO.Action.CREATED, pet.getId());
+            }
+            ownerCaches.evictOwners(existingOwnerIds);
+            versions.customersChanged(existingOwnerIds);
+        });
+    }
+
+    private void writeEmployees(List<ImportPipeline.Row<EmployeeDTO>> batch) {
+        List<Employee> employees = new ArrayList<>(batch.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            for (ImportPipeline.Row<EmployeeDTO> row : batch) {
+                Employee employee = new Employee();
+                employee.setName(row.value.getName());
+                employee.setSkills(row.value.getSkills());
+                employee.setDaysAvailable(row.value.getDaysAvailable());
+                entityManager.persist(employee);
+                row.id = employee.getId();
+                changeLog.record(ChangeEventDTO.Entity.EMPLOYEE, ChangeEventDTO.Action.CREATED, employee.getId());
+                employees.add(employee);
+            }
+        });
+        availabilityIndex.putAll(employees);
+    }
+}
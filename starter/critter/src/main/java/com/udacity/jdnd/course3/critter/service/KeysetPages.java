@@ -0,0 +1,58 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Helpers for keyset (seek) pagination, where a page is the rows with an id greater than the last id of the
+ * previous page. Unlike offset pagination the cost of a page does not grow with how far into the table it is.
+ */
+final class KeysetPages {
+    /**
+     * Largest number of rows a single page may hold
+     */
+    static final int MAX_LIMIT = 1000;
+
+    /**
+     * Number of rows read at a time when visiting every row
+     */
+    static final int CHUNK_SIZE = 500;
+
+    private KeysetPages() {
+    }
+
+    /**
+     * Gets the page request for the first {@code limit} rows, clamped to between 1 and {@link #MAX_LIMIT}.
+     * @param limit the requested number of rows
+     * @return the page request
+     */
+    static Pageable first(int limit) {
+        return PageRequest.of(0, Math.max(1, Math.min(limit, MAX_LIMIT)));
+    }
+
+    /**
+     * Visits every row after the given id, one page at a time. The persistence context is cleared after each page
+     * so that memory use does not depend on the number of rows.
+     * @param afterId the id to start after
+     * @param pageLoader loads the page of rows following an id
+     * @param idOf gets the id of a row
+     * @param action the action to perform on each row
+     * @param entityManager the entity manager that loaded the rows
+     */
+    static <T> void forEach(long afterId, LongFunction<List<T>> pageLoader, ToLongFunction<T> idOf,
+                            Consumer<T> action, EntityManager entityManager) {
+        List<T> page = pageLoader.apply(afterId);
+        while (!page.isEmpty()) {
+            page.forEach(action);
+            long lastId = idOf.applyAsLong(page.get(page.size() - 1));
+            entityManager.clear();
+            page = pageLoader.apply(lastId);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.RecurringSchedule;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Expands recurring schedules into their occurrences within a date range. Only the weeks with occurrences are visited,
+ * so the cost is proportional to the number of occurrences returned rather than to the length of the range.
+ */
+final class Occurrences {
+    /**
+     * Orders schedules by date, keeping the order of schedules on the same date
+     */
+    static final Comparator<Schedule> BY_DATE = Comparator.comparing(Schedule::getDate);
+
+    private Occurrences() {
+    }
+
+    /**
+     * Generates the occurrences of recurring schedules within a date range. The occurrences are transient schedules
+     * sharing the employees, pets and activities of their recurring schedule.
+     * @param recurringSchedules the recurring schedules to expand
+     * @param from the first date of the range
+     * @param to the last date of the range
+     * @return the occurrences in date order, those on the same date in the order of the recurring schedules
+     */
+    static List<Schedule> between(List<RecurringSchedule> recurringSchedules, LocalDate from, LocalDate to) {
+        List<Schedule> occurrences = new ArrayList<>();
+        for (RecurringSchedule recurringSchedule : recurringSchedules) {
+            for (LocalDate date : dates(recurringSchedule, from, to)) {
+                occurrences.add(occurrence(recurringSchedule, date));
+            }
+        }
+        occurrences.sort(BY_DATE);
+        return occurrences;
+    }
+
+    /**
+     * Gets the dates a recurring schedule occurs on within a date range, skipped dates left out.
+     * @param recurringSchedule the recurring schedule
+     * @param from the first date of the range
+     * @param to the last date of the range
+     * @return the dates in ascending order
+     */
+    static List<LocalDate> dates(RecurringSchedule recurringSchedule, LocalDate from, LocalDate to) {
+        LocalDate first = max(from, recurringSchedule.getStartDate());
+        LocalDate last = recurringSchedule.getEndDate() == null ? to : min(to, recurringSchedule.getEndDate());
+        List<LocalDate> dates = new ArrayList<>();
+        if (first.isAfter(last) || recurringSchedule.getDaysOfWeek().isEmpty()) {
+            return dates;
+        }
+        int interval = Math.max(1, recurringSchedule.getIntervalWeeks());
+        EnumSet<DayOfWeek> days = EnumSet.copyOf(recurringSchedule.getDaysOfWeek());
+
+        //start from the first week with occurrences that is not before the week of the first date
+        LocalDate ruleWeek = monday(recurringSchedule.getStartDate());
+        long weeks = ChronoUnit.WEEKS.between(ruleWeek, monday(first));
+        long skippedWeeks = (weeks + interval - 1) / interval * interval;
+        for (LocalDate week = ruleWeek.plusWeeks(skippedWeeks); !week.isAfter(last); week = week.plusWeeks(interval)) {
+            for (DayOfWeek day : days) {
+                LocalDate date = week.plusDays(day.ordinal());
+                if (!date.isBefore(first) && !date.isAfter(last) && !recurringSchedule.getSkippedDates().contains(date)) {
+                    dates.add(date);
+                }
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * Gets the dates two recurring schedules both occur on. Once both have started, their occurrences repeat every
+     * least common multiple of their intervals, so only one such period is compared, starting after the last date
+     * skipped by either of them.
+     * @param a a recurring schedule
+     * @param b another recurring schedule
+     * @return the common dates in ascending order, empty if there are none
+     */
+    static List<LocalDate> commonDates(RecurringSchedule a, RecurringSchedule b) {
+        LocalDate from = max(a.getStartDate(), b.getStartDate());
+        LocalDate periodStart = from;
+        for (LocalDate skipped : a.getSkippedDates()) {
+            periodStart = max(periodStart, skipped);
+        }
+        for (LocalDate skipped : b.getSkippedDates()) {
+            periodStart = max(periodStart, skipped);
+        }
+        int intervalA = Math.max(1, a.getIntervalWeeks());
+        int intervalB = Math.max(1, b.getIntervalWeeks());
+        long period = (long) intervalA / gcd(intervalA, intervalB) * intervalB;
+        LocalDate to = periodStart.plusWeeks(period + 1);
+        List<LocalDate> dates = dates(a, from, to);
+        dates.retainAll(dates(b, from, to));
+        return dates;
+    }
+
+    /**
+     * Merges two lists of schedules that are each in date order into one, with the schedules of the first list
+     * ahead of those of the second on the same date.
+     * @param stored the stored schedules
+     * @param occurrences the generated occurrences
+     * @return the merged schedules in date order
+     */
+    static List<Schedule> merge(List<Schedule> stored, List<Schedule> occurrences) {
+        if (occurrences.isEmpty()) {
+            return stored;
+        }
+        List<Schedule> merged = new ArrayList<>(stored.size() + occurrences.size());
+        int i = 0;
+        int j = 0;
+        while (i < stored.size() && j < occurrences.size()) {
+            if (occurrences.get(j).getDate().isBefore(stored.get(i).getDate())) {
+                merged.add(occurrences.get(j++));
+            } else {
+                merged.add(stored.get(i++));
+            }
+        }
+        merged.addAll(stored.subList(i, stored.size()));
+        merged.addAll(occurrences.subList(j, occurrences.size()));
+        return merged;
+    }
+
+    private static Schedule occurrence(RecurringSchedule recurringSchedule, LocalDate date) {
+        Schedule occurrence = new Schedule();
+        occurrence.setDate(date);
+        occurrence.setEmployees(recurringSchedule.getEmployees());
+        occurrence.setPets(recurringSchedule.getPets());
+        occurrence.setActivities(recurringSchedule.getActivities());
+        occurrence.setRecurringSchedule(recurringSchedule);
+        return occurrence;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static LocalDate monday(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
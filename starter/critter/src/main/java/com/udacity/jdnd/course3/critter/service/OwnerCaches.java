@@ -0,0 +1,50 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.config.CacheConfig;
+import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Evicts the cached pets and owners touched by a change, instead of clearing the caches. Owners are cached by the id
+ * of each of their pets, so evicting an owner reads the ids of their pets first. Like the evictions declared with
+ * annotations, these are applied when the surrounding transaction commits.
+ */
+@Component
+class OwnerCaches {
+    private final PetRepository petsRepository;
+    private final Cache pets;
+    private final Cache owners;
+
+    /**
+     * Constructor with dependencies.
+     * @param petsRepository repository the pet ids of the owners are read from
+     * @param cacheManager manager of the pet and owner caches
+     */
+    OwnerCaches(PetRepository petsRepository, CacheManager cacheManager) {
+        this.petsRepository = petsRepository;
+        this.pets = cacheManager.getCache(CacheConfig.PETS);
+        this.owners = cacheManager.getCache(CacheConfig.OWNERS);
+    }
+
+    /**
+     * Evicts customers from the owner cache.
+     * @param customerIds the ids of the changed customers
+     */
+    void evictOwners(Collection<Long> customerIds) {
+        if (!customerIds.isEmpty()) {
+            petsRepository.getIdsByCustomerIdIn(customerIds).forEach(owners::evict);
+        }
+    }
+
+    /**
+     * Evicts pets from the pet cache.
+     * @param petIds the ids of the changed pets
+     */
+    void evictPets(Collection<Long> petIds) {
+        petIds.forEach(pets::evict);
+    }
+}
@@ -1,15 +1,26 @@
 package com.udacity.jdnd.course3.critter.service;
 
+import com.udacity.jdnd.course3.critter.config.CacheConfig;
+import com.udacity.jdnd.course3.critter.config.ReadFromPrimary;
+import com.udacity.jdnd.course3.critter.dto.ChangeEventDTO;
 import com.udacity.jdnd.course3.critter.entity.Customer;
 import com.udacity.jdnd.course3.critter.entity.Pet;
 import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
 import com.udacity.jdnd.course3.critter.repository.PetRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
 import javax.persistence.EntityNotFoundException;
-import javax.transaction.Transactional;
+import javax.persistence.PersistenceContext;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 @Transactional
@@ -20,55 +31,131 @@ public class PetsService {
     @Autowired
     private final CustomerRepository customersRepository;
 
+    @Autowired
+    private final EntityResolver entityResolver;
+
+    @Autowired
+    private final ChangeLog changeLog;
+
+    @Autowired
+    private final AggregateVersions versions;
+
+    @Autowired
+    private final CustomerScheduleView customerScheduleView;
+
+    @Autowired
+    private final OwnerCaches ownerCaches;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     /**
      * Constructor with dependencies.
      * @param petsRepository repository for pet entities
      * @param customersRepository repository for customer entities
+     * @param entityResolver resolver of pet and customer ids
+     * @param changeLog outbox the pet changes are recorded in
+     * @param versions versions of the owners, bumped when their pets change
+     * @param customerScheduleView per-customer schedule view, relinked when a pet moves to another owner
+     * @param ownerCaches evictor of the cached owners whose pets change
      */
-    public PetsService(PetRepository petsRepository, CustomerRepository customersRepository) {
+    public PetsService(PetRepository petsRepository, CustomerRepository customersRepository, EntityResolver entityResolver,
+                       ChangeLog changeLog, AggregateVersions versions, CustomerScheduleView customerScheduleView,
+                       OwnerCaches ownerCaches) {
         this.petsRepository = petsRepository;
         this.customersRepository = customersRepository;
+        this.entityResolver = entityResolver;
+        this.changeLog = changeLog;
+        this.versions = versions;
+        this.customerScheduleView = customerScheduleView;
+        this.ownerCaches = ownerCaches;
     }
 
     /**
      * Gets a list of all pets.
      * @return list of pet entities
      */
+    @Transactional(readOnly = true)
     public List<Pet> getAllPets() {
         return petsRepository.findAll();
     }
 
+    /**
+     * Gets one page of pets, ordered by id.
+     * @param afterId id of the last pet of the previous page, 0 for the first page
+     * @param limit maximum number of pets to return
+     * @return list of pet entities
+     */
+    @Transactional(readOnly = true)
+    public List<Pet> getPetsAfter(long afterId, int limit) {
+        return petsRepository.getAllByIdGreaterThanOrderById(afterId, KeysetPages.first(limit));
+    }
+
+    /**
+     * Visits every pet after the given id in id order, reading them in fixed-size chunks.
+     * @param afterId id to start after, 0 to visit every pet
+     * @param action action to perform on each pet
+     */
+    @Transactional(readOnly = true)
+    public void forEachPet(long afterId, Consumer<Pet> action) {
+        KeysetPages.forEach(afterId, id -> getPetsAfter(id, KeysetPages.CHUNK_SIZE), Pet::getId, action, entityManager);
+    }
+
     /**
      * Gets a list of all pets belonging to a specific customer.
      * @param customerId id of the customer entity
      * @return list of pet entities
      */
+    @Transactional(readOnly = true)
     public List<Pet> getPetsByCustomerId(Long customerId){
         return petsRepository.getAllByCustomerId(customerId);
     }
 
     /**
-     * Gets a pet by its id.
+     * Gets a pet by its id. Pets are cached, so repeated lookups of the same pet do not reach the database, and read
+     * from the primary when they are not.
      * @param petId id of the pet entity
      * @return pet entity
+     * @throws EntityNotFoundException if the pet entity does not exist
      */
+    @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.PETS)
+    @ReadFromPrimary
     public Pet getPetById(Long petId){
-        return petsRepository.getOne(petId);
+        return entityResolver.pet(petId);
     }
 
     /**
-     * Saves a new pet entity and links it to a customer entity.
-     * @param pet new pet entity to save
+     * Saves a new or updated pet entity and links it to a customer entity. The owner is read without its pets and
+     * stored on the pet, so this is a single insert whatever the number of pets the customer already has. The saved
+     * pet is evicted from the pet cache, and since it changes the pet list of its owner, the owner is evicted from the
+     * owner cache, under the ids of each of their pets, and the version of the owner is bumped. An updated pet is
+     * looked up first: when it moves to another owner, the previous owner is evicted and has their version bumped as
+     * well, and the pet's schedules are relinked in the per-customer schedule view.
+     * @param pet new or updated pet entity to save
      * @param ownerId id of the owner customer entity
      * @return saved pet entity
      * @throws EntityNotFoundException if the owner customer entity does not exist
      */
+    @CacheEvict(cacheNames = CacheConfig.PETS, key = "#result.id")
     public Pet savePet(Pet pet, Long ownerId) {
-        Customer customer = customersRepository.findById(ownerId).orElseThrow(EntityNotFoundException::new);
-        pet.setCustomer(customer);
-        pet = petsRepository.save(pet);
+        Customer customer = customersRepository.findById(ownerId)
+                .orElseThrow(() -> EntityResolver.notFound("customer", Collections.singleton(ownerId)));
+        ChangeEventDTO.Action action = pet.getId() == 0 ? ChangeEventDTO.Action.CREATED : ChangeEventDTO.Action.UPDATED;
+        Set<Long> changedCustomerIds = new HashSet<>();
+        changedCustomerIds.add(ownerId);
+        Long previousOwnerId = pet.getId() == 0 ? null : petsRepository.getOwnerIdById(pet.getId()).orElse(null);
+        if (previousOwnerId != null) {
+            changedCustomerIds.add(previousOwnerId);
+        }
         customer.addPet(pet);
-        customersRepository.save(customer);
-        return pet;
+        Pet savedPet = petsRepository.save(pet);
+        if (previousOwnerId != null && !previousOwnerId.equals(ownerId)) {
+            customerScheduleView.relink(Collections.singleton(savedPet.getId()));
+        }
+        changeLog.record(ChangeEventDTO.Entity.PET, action, savedPet.getId());
+        ownerCaches.evictOwners(changedCustomerIds);
+        versions.customersChanged(changedCustomerIds);
+        return savedPet;
     }
 }
\ No newline at end of file
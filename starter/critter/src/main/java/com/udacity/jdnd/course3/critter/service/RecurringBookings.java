@@ -0,0 +1,130 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import com.udacity.jdnd.course3.critter.entity.RecurringSchedule;
+import com.udacity.jdnd.course3.critter.repository.EmployeeSlotRepository;
+import com.udacity.jdnd.course3.critter.repository.RecurringScheduleRepository;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the employees taken by the occurrences of recurring schedules. Occurrences are not stored, so they claim no
+ * {@link EmployeeSlot} and are not in the {@link EmployeeBookingIndex}: availability leaves out the employees they
+ * take on top of the booked ones, and one-off and recurring schedules are checked against each other when saved.
+ *
+ * The checks read what is committed, so the callers lock the rows of the employees first: of two saves booking the
+ * same employee, the second one waits for the first to finish and then sees its schedule.
+ */
+@Component
+class RecurringBookings {
+    private final RecurringScheduleRepository recurringSchedulesRepository;
+    private final EmployeeSlotRepository employeeSlotsRepository;
+
+    /**
+     * Constructor with dependencies.
+     * @param recurringSchedulesRepository repository of the recurring schedules
+     * @param employeeSlotsRepository repository of the dates claimed by the one-off schedules
+     */
+    RecurringBookings(RecurringScheduleRepository recurringSchedulesRepository, EmployeeSlotRepository employeeSlotsRepository) {
+        this.recurringSchedulesRepository = recurringSchedulesRepository;
+        this.employeeSlotsRepository = employeeSlotsRepository;
+    }
+
+    /**
+     * Gets the employees taken by a recurring schedule on each date of a range.
+     * @param from the first date of the range
+     * @param to the last date of the range
+     * @return the bitset of the taken employee ids on each date with any, in a map the caller may modify
+     */
+    Map<LocalDate, BitSet> bookedBetween(LocalDate from, LocalDate to) {
+        Map<LocalDate, BitSet> booked = new HashMap<>();
+        for (RecurringSchedule recurringSchedule : recurringSchedulesRepository.getAllBetween(from, to)) {
+            for (LocalDate date : Occurrences.dates(recurringSchedule, from, to)) {
+                BitSet employees = booked.computeIfAbsent(date, d -> new BitSet());
+                recurringSchedule.getEmployees().forEach(employee -> employees.set(Math.toIntExact(employee.getId())));
+            }
+        }
+        return booked;
+    }
+
+    /**
+     * Gets the employees taken by a recurring schedule on a date.
+     * @param date the date to check
+     * @return a new bitset of the taken employee ids
+     */
+    BitSet bookedOn(LocalDate date) {
+        return bookedBetween(date, date).getOrDefault(date, new BitSet());
+    }
+
+    /**
+     * Checks that one-off schedules book no employee on a date a recurring schedule takes them.
+     * @param claims the ids of the employees booked on each date
+     * @throws ScheduleConflictException if a recurring schedule takes any of the employees on their date
+     */
+    void checkFree(NavigableMap<LocalDate, Set<Long>> claims) {
+        if (claims.isEmpty()) {
+            return;
+        }
+        Set<Long> employeeIds = claims.values().stream().flatMap(Set::stream).collect(Collectors.toCollection(TreeSet::new));
+        LocalDate from = claims.firstKey();
+        LocalDate to = claims.lastKey();
+        for (RecurringSchedule recurringSchedule : recurringSchedulesRepository.getAllByEmployeeIdInBetween(employeeIds, from, to)) {
+            for (LocalDate date : Occurrences.dates(recurringSchedule, from, to)) {
+                Set<Long> claimed = claims.getOrDefault(date, Collections.emptySet());
+                List<Long> booked = employeeIds(recurringSchedule).stream().filter(claimed::contains).collect(Collectors.toList());
+                if (!booked.isEmpty()) {
+                    throw new ScheduleConflictException(date, booked);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a new recurring schedule takes none of its employees on a date they are booked on, by a one-off
+     * schedule or by the occurrence of another recurring schedule.
+     * @param recurringSchedule the recurring schedule, with its employees set
+     * @throws ScheduleConflictException if any of its occurrences falls on a date one of its employees is booked on
+     */
+    void checkFree(RecurringSchedule recurringSchedule) {
+        Set<Long> employeeIds = employeeIds(recurringSchedule);
+        if (employeeIds.isEmpty()) {
+            return;
+        }
+        LocalDate from = recurringSchedule.getStartDate();
+        LocalDate to = recurringSchedule.getEndDate();
+        for (EmployeeSlot slot : employeeSlotsRepository.getAllByEmployeeIdInFrom(employeeIds, from)) {
+            if (to != null && slot.getDate().isAfter(to)) {
+                break;
+            }
+            if (!Occurrences.dates(recurringSchedule, slot.getDate(), slot.getDate()).isEmpty()) {
+                throw new ScheduleConflictException(slot.getDate(), Collections.singleton(slot.getEmployeeId()));
+            }
+        }
+        for (RecurringSchedule other : recurringSchedulesRepository.getAllByEmployeeIdInFrom(employeeIds, from)) {
+            if (to != null && other.getStartDate().isAfter(to)) {
+                continue;
+            }
+            List<LocalDate> dates = Occurrences.commonDates(recurringSchedule, other);
+            if (!dates.isEmpty()) {
+                Set<Long> booked = employeeIds(other);
+                booked.retainAll(employeeIds);
+                throw new ScheduleConflictException(dates.get(0), booked);
+            }
+        }
+    }
+
+    private static Set<Long> employeeIds(RecurringSchedule recurringSchedule) {
+        return recurringSchedule.getEmployees().stream().map(Employee::getId).collect(Collectors.toCollection(TreeSet::new));
+    }
+}
@@ -0,0 +1,27 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Thrown when a schedule books an employee on a date they are already booked on.
+ */
+public class ScheduleConflictException extends RuntimeException {
+    /**
+     * Creates the exception for employees known to be booked already.
+     * @param date the date of the schedule
+     * @param employeeIds the ids of the employees already booked on the date
+     */
+    public ScheduleConflictException(LocalDate date, Collection<Long> employeeIds) {
+        super("Employees already booked on " + date + ": " + employeeIds);
+    }
+
+    /**
+     * Creates the exception for a booking rejected by the database.
+     * @param message the detail message
+     * @param cause the exception of the rejected insert
+     */
+    public ScheduleConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
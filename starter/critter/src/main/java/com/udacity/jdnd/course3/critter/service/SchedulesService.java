@@ -1,17 +1,43 @@
 package com.udacity.jdnd.course3.critter.service;
 
+import com.udacity.jdnd.course3.critter.dto.ChangeEventDTO;
 import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import com.udacity.jdnd.course3.critter.entity.EnumSetConverter;
 import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.entity.RecurringSchedule;
 import com.udacity.jdnd.course3.critter.entity.Schedule;
-import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
-import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
-import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import com.udacity.jdnd.course3.critter.repository.EmployeeSlotRepository;
+import com.udacity.jdnd.course3.critter.repository.RecurringScheduleRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleCursor;
 import com.udacity.jdnd.course3.critter.repository.ScheduleRepository;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,63 +47,218 @@ public class SchedulesService {
     private final ScheduleRepository scheduleRepository;
 
     @Autowired
-    private final PetRepository petsRepository;
+    private final EntityResolver entityResolver;
 
     @Autowired
-    private final EmployeeRepository employeesRepository;
+    private final CustomerScheduleView customerScheduleView;
 
     @Autowired
-    private final CustomerRepository customersRepository;
+    private final EmployeeBookingIndex bookingIndex;
+
+    @Autowired
+    private final ScheduleCursor scheduleCursor;
+
+    @Autowired
+    private final RecurringScheduleRepository recurringSchedulesRepository;
+
+    @Autowired
+    private final EmployeeSlotRepository employeeSlotsRepository;
+
+    @Autowired
+    private final RecurringBookings recurringBookings;
+
+    @Autowired
+    private final ChangeLog changeLog;
+
+    @Autowired
+    private final AggregateVersions versions;
+
+    /**
+     * Number of days after today up to which recurring schedules without an end date are expanded when no date range
+     * is given
+     */
+    private final int recurrenceHorizonDays;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /**
      * Constructor for creating a new instance of {@link SchedulesService}
      * @param scheduleRepository The schedule repository instance
-     * @param petsRepository The pet repository instance
-     * @param employeesRepository The employee repository instance
-     * @param customersRepository The customer repository instance
+     * @param entityResolver The resolver of employee and pet ids
+     * @param customerScheduleView The per-customer schedule view the saved schedules are linked in
+     * @param bookingIndex The index of employees booked on each date
+     * @param scheduleCursor The cursor reading schedules without loading entities
+     * @param recurringSchedulesRepository The recurring schedule repository instance
+     * @param employeeSlotsRepository The repository of the dates claimed by each employee
+     * @param recurringBookings The checks of the dates taken by recurring schedules
+     * @param changeLog The outbox the schedule changes are recorded in
+     * @param versions The versions of the employees, bumped when their schedules change
+     * @param recurrenceHorizonDays The number of days after today up to which recurring schedules without an end date
+     *                              are expanded when no date range is given
      */
-    public SchedulesService(ScheduleRepository scheduleRepository, PetRepository petsRepository, EmployeeRepository employeesRepository, CustomerRepository customersRepository) {
+    public SchedulesService(ScheduleRepository scheduleRepository, EntityResolver entityResolver, CustomerScheduleView customerScheduleView, EmployeeBookingIndex bookingIndex, ScheduleCursor scheduleCursor,
+                            RecurringScheduleRepository recurringSchedulesRepository, EmployeeSlotRepository employeeSlotsRepository, RecurringBookings recurringBookings, ChangeLog changeLog, AggregateVersions versions,
+                            @Value("${critter.recurrence.horizon-days:365}") int recurrenceHorizonDays) {
         this.scheduleRepository = scheduleRepository;
-        this.petsRepository = petsRepository;
-        this.employeesRepository = employeesRepository;
-        this.customersRepository = customersRepository;
+        this.entityResolver = entityResolver;
+        this.customerScheduleView = customerScheduleView;
+        this.bookingIndex = bookingIndex;
+        this.scheduleCursor = scheduleCursor;
+        this.recurringSchedulesRepository = recurringSchedulesRepository;
+        this.employeeSlotsRepository = employeeSlotsRepository;
+        this.recurringBookings = recurringBookings;
+        this.changeLog = changeLog;
+        this.versions = versions;
+        this.recurrenceHorizonDays = recurrenceHorizonDays;
+    }
+
+    /**
+     * Load the employee bookings of the stored schedules from today on into the booking index once the application
+     * has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadBookingIndex() {
+        scheduleRepository.getAllEmployeeBookingsFrom(LocalDate.now())
+                .forEach(booking -> bookingIndex.load(booking.getDate(), booking.getEmployeeId()));
     }
 
     /**
-     * Get all schedules
-     * @return A list of all schedules
+     * Get one page of schedules, ordered by id
+     * @param afterId The id of the last schedule of the previous page, 0 for the first page
+     * @param limit The maximum number of schedules to return
+     * @return A list of schedules with their employees, pets and activities loaded
      */
-    public List<Schedule> getAllSchedules() {
-        return scheduleRepository.findAll();
+    @Transactional(readOnly = true)
+    public List<Schedule> getSchedulesAfter(long afterId, int limit) {
+        List<Long> scheduleIds = scheduleRepository.getIdsAfter(afterId, KeysetPages.first(limit));
+        if (scheduleIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return scheduleRepository.getAllByIdIn(scheduleIds);
     }
 
     /**
-     * Get all schedules for a pet
+     * Visit every schedule after the given id in id order, reading them in fixed-size chunks
+     * @param afterId The id to start after, 0 to visit every schedule
+     * @param action The action to perform on each schedule
+     */
+    @Transactional(readOnly = true)
+    public void forEachSchedule(long afterId, Consumer<Schedule> action) {
+        KeysetPages.forEach(afterId, id -> getSchedulesAfter(id, KeysetPages.CHUNK_SIZE), Schedule::getId, action, entityManager);
+    }
+
+    /**
+     * Visit every schedule in id order through a single JDBC cursor, without loading entities, so that memory use
+     * does not grow with the number of schedules. Pending changes of the surrounding transaction are flushed first,
+     * as Hibernate does before a native query.
+     * @param action The action to perform on each schedule, as soon as it has been read
+     */
+    @Transactional(readOnly = true)
+    public void streamAllSchedules(Consumer<ScheduleDTO> action) {
+        entityManager.flush();
+        scheduleCursor.forEach(action);
+    }
+
+    /**
+     * Get all schedules for a pet, with the occurrences of its recurring schedules
      * @param petId The id of the pet
-     * @return A list of schedules associated with the pet
+     * @return A list of the stored schedules associated with the pet in id order, followed by the occurrences of its
+     * recurring schedules in date order
+     * @throws EntityNotFoundException if the pet does not exist
      */
+    @Transactional(readOnly = true)
     public List<Schedule> getAllSchedulesForPet(Long petId) {
-        return scheduleRepository.getAllByPetsContains(petsRepository.getOne(petId));
+        List<Schedule> schedules = scheduleRepository.getAllByPetId(petId);
+        List<RecurringSchedule> recurringSchedules = recurringSchedulesRepository.getAllByPetId(petId);
+        if (schedules.isEmpty() && recurringSchedules.isEmpty()) {
+            entityResolver.pet(petId);
+        }
+        return withAllOccurrences(schedules, recurringSchedules);
     }
 
 
     /**
-     * Get all schedules for an employee
+     * Get all schedules for an employee, with the occurrences of their recurring schedules
      * @param employeeId The id of the employee
-     * @return A list of schedules associated with the employee
+     * @return A list of the stored schedules associated with the employee in id order, followed by the occurrences
+     * of their recurring schedules in date order
+     * @throws EntityNotFoundException if the employee does not exist
      */
+    @Transactional(readOnly = true)
     public List<Schedule> getAllSchedulesForEmployee(Long employeeId) {
-        return scheduleRepository.getAllByEmployeesContains(employeesRepository.getOne(employeeId));
+        List<Schedule> schedules = scheduleRepository.getAllByEmployeeId(employeeId);
+        List<RecurringSchedule> recurringSchedules = recurringSchedulesRepository.getAllByEmployeeId(employeeId);
+        if (schedules.isEmpty() && recurringSchedules.isEmpty()) {
+            entityResolver.employee(employeeId);
+        }
+        return withAllOccurrences(schedules, recurringSchedules);
     }
 
 
     /**
-     * Get all schedules for a customer
+     * Get all schedules for a customer, read from the per-customer schedule view
      * @param customerId The id of the customer
-     * @return A list of schedules associated with the customer's pets
+     * @return A list of schedules associated with the customer's pets, ordered by date
      */
+    @Transactional(readOnly = true)
     public List<Schedule> getAllScheduleForCustomer(Long customerId) {
-        return scheduleRepository.getAllByPetsIn(customersRepository.getOne(customerId).getPets());
+        return scheduleRepository.getAllByCustomerId(customerId);
+    }
+
+    /**
+     * Get the schedules within a date range
+     * @param from The first date of the range
+     * @param to The last date of the range
+     * @param activity The activity the schedules must include, or null for any
+     * @return A list of schedules ordered by date
+     */
+    @Transactional(readOnly = true)
+    public List<Schedule> getSchedulesBetween(LocalDate from, LocalDate to, EmployeeSkill activity) {
+        return scheduleRepository.getAllBetween(from, to, EnumSetConverter.mask(activity));
+    }
+
+    /**
+     * Get the schedules of a pet within a date range, with the occurrences of its recurring schedules
+     * @param petId The id of the pet
+     * @param from The first date of the range
+     * @param to The last date of the range
+     * @param activity The activity the schedules must include, or null for any
+     * @return A list of schedules ordered by date, stored schedules ahead of occurrences on the same date
+     */
+    @Transactional(readOnly = true)
+    public List<Schedule> getSchedulesForPetBetween(long petId, LocalDate from, LocalDate to, EmployeeSkill activity) {
+        int activities = EnumSetConverter.mask(activity);
+        return Occurrences.merge(scheduleRepository.getAllByPetIdBetween(petId, from, to, activities),
+                Occurrences.between(recurringSchedulesRepository.getAllByPetIdBetween(petId, from, to, activities), from, to));
+    }
+
+    /**
+     * Get the schedules of an employee within a date range, with the occurrences of their recurring schedules
+     * @param employeeId The id of the employee
+     * @param from The first date of the range
+     * @param to The last date of the range
+     * @param activity The activity the schedules must include, or null for any
+     * @return A list of schedules ordered by date, stored schedules ahead of occurrences on the same date
+     */
+    @Transactional(readOnly = true)
+    public List<Schedule> getSchedulesForEmployeeBetween(long employeeId, LocalDate from, LocalDate to, EmployeeSkill activity) {
+        int activities = EnumSetConverter.mask(activity);
+        return Occurrences.merge(scheduleRepository.getAllByEmployeeIdBetween(employeeId, from, to, activities),
+                Occurrences.between(recurringSchedulesRepository.getAllByEmployeeIdBetween(employeeId, from, to, activities), from, to));
+    }
+
+    /**
+     * Get the schedules of a customer's pets within a date range, read from the per-customer schedule view
+     * @param customerId The id of the customer
+     * @param from The first date of the range
+     * @param to The last date of the range
+     * @param activity The activity the schedules must include, or null for any
+     * @return A list of schedules ordered by date
+     */
+    @Transactional(readOnly = true)
+    public List<Schedule> getSchedulesForCustomerBetween(long customerId, LocalDate from, LocalDate to, EmployeeSkill activity) {
+        return scheduleRepository.getAllByCustomerIdBetween(customerId, from, to, EnumSetConverter.mask(activity));
     }
 
     /**
@@ -86,19 +267,145 @@ public class SchedulesService {
      * @param employeeIds A list of employee ids associated with the schedule
      * @param petIds A list of pet ids associated with the schedule
      * @return The saved schedule
+     * @throws EntityNotFoundException if any employee or pet id does not exist
      */
     public Schedule saveSchedule(Schedule schedule, List<Long> employeeIds, List<Long> petIds) {
-        List<Employee> employees = employeeIds.stream()
-                .map(employeesRepository::getOne)
-                .collect(Collectors.toList());
+        return saveSchedules(Collections.singletonList(schedule), Collections.singletonList(employeeIds),
+                Collections.singletonList(petIds)).get(0);
+    }
+
+    /**
+     * Save many schedules at once. The employees and pets referenced by all of the schedules are resolved with one
+     * query per entity type, and every schedule is rejected if any of them does not exist.
+     *
+     * An employee can only be booked once per date. The dates are claimed in the booking index before anything is
+     * written, so a conflict within this instance fails without touching the database, and bookings of different
+     * employees never wait for each other. The claims are then stored as {@link EmployeeSlot} rows, whose unique
+     * constraint rejects a conflicting booking made through another instance.
+     *
+     * Occurrences of recurring schedules claim no slot, so the dates are also checked against the recurring schedules
+     * of the employees. The employee rows are locked for the rest of the transaction, in the same query that resolves
+     * them, so that a recurring schedule saved meanwhile for the same employees waits for this one instead of missing
+     * it. Bookings of different employees still never wait for each other.
+     * @param schedules The schedules to be saved
+     * @param employeeIds The employee ids of each schedule, in the same order as the schedules
+     * @param petIds The pet ids of each schedule, in the same order as the schedules
+     * @return The saved schedules
+     * @throws EntityNotFoundException if any employee or pet id does not exist
+     * @throws ScheduleConflictException if an employee is already booked on the date of a schedule, by a one-off or a
+     * recurring schedule, or twice on the same date within the schedules
+     */
+    public List<Schedule> saveSchedules(List<Schedule> schedules, List<List<Long>> employeeIds, List<List<Long>> petIds) {
+        Map<Long, Employee> employees = entityResolver.lockedEmployees(flatten(employeeIds));
+        Map<Long, Pet> pets = entityResolver.pets(flatten(petIds));
 
-        List<Pet> pets = petIds.stream()
-                .map(petsRepository::getOne)
-                .collect(Collectors.toList());
+        NavigableMap<LocalDate, Set<Long>> claims = new TreeMap<>();
+        for (int i = 0; i < schedules.size(); i++) {
+            Schedule schedule = schedules.get(i);
+            schedule.setEmployees(employeeIds.get(i).stream().map(employees::get).collect(Collectors.toList()));
+            schedule.setPets(petIds.get(i).stream().map(pets::get).collect(Collectors.toList()));
+            if (schedule.getDate() != null) {
+                claims.computeIfAbsent(schedule.getDate(), date -> new HashSet<>()).addAll(employeeIds.get(i));
+            }
+        }
+        recurringBookings.checkFree(claims);
+        for (int i = 0; i < schedules.size(); i++) {
+            bookingIndex.claim(schedules.get(i).getDate(), new LinkedHashSet<>(employeeIds.get(i)));
+        }
 
-        schedule.setEmployees(employees);
-        schedule.setPets(pets);
+        List<Schedule> savedSchedules = scheduleRepository.saveAll(schedules);
+        List<EmployeeSlot> slots = new ArrayList<>();
+        for (int i = 0; i < savedSchedules.size(); i++) {
+            Schedule schedule = savedSchedules.get(i);
+            if (schedule.getDate() != null) {
+                new LinkedHashSet<>(employeeIds.get(i)).forEach(employeeId -> slots.add(new EmployeeSlot(employeeId, schedule)));
+            }
+        }
+        try {
+            employeeSlotsRepository.saveAll(slots);
+            employeeSlotsRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw new ScheduleConflictException("An employee is already booked on the date of a schedule", e);
+        }
+        customerScheduleView.link(savedSchedules);
+        savedSchedules.forEach(schedule -> changeLog.record(ChangeEventDTO.Entity.SCHEDULE, ChangeEventDTO.Action.CREATED, schedule.getId()));
+        versions.employeesChanged(flatten(employeeIds));
+        return savedSchedules;
+    }
+
+    /**
+     * Save a recurring schedule. Its occurrences are generated when schedules are read, and are not stored. None of
+     * them may fall on a date one of its employees is already booked on, by a one-off schedule or by another recurring
+     * schedule; the employee rows are locked first, as when one-off schedules are saved.
+     * @param recurringSchedule The recurring schedule to be saved
+     * @param employeeIds A list of employee ids associated with the schedule
+     * @param petIds A list of pet ids associated with the schedule
+     * @return The saved recurring schedule
+     * @throws EntityNotFoundException if any employee or pet id does not exist
+     * @throws IllegalArgumentException if the schedule has no start date, or ends before it starts
+     * @throws ScheduleConflictException if an occurrence falls on a date one of its employees is booked on
+     */
+    public RecurringSchedule saveRecurringSchedule(RecurringSchedule recurringSchedule, List<Long> employeeIds, List<Long> petIds) {
+        LocalDate startDate = recurringSchedule.getStartDate();
+        if (startDate == null) {
+            throw new IllegalArgumentException("A recurring schedule needs a start date");
+        }
+        if (recurringSchedule.getEndDate() != null && recurringSchedule.getEndDate().isBefore(startDate)) {
+            throw new IllegalArgumentException("A recurring schedule cannot end before it starts");
+        }
+        if (recurringSchedule.getDaysOfWeek() == null || recurringSchedule.getDaysOfWeek().isEmpty()) {
+            recurringSchedule.setDaysOfWeek(EnumSet.of(startDate.getDayOfWeek()));
+        }
+        recurringSchedule.setIntervalWeeks(Math.max(1, recurringSchedule.getIntervalWeeks()));
+
+        Map<Long, Employee> employees = entityResolver.lockedEmployees(employeeIds);
+        Map<Long, Pet> pets = entityResolver.pets(petIds);
+        recurringSchedule.setEmployees(employeeIds.stream().map(employees::get).collect(Collectors.toList()));
+        recurringSchedule.setPets(petIds.stream().map(pets::get).collect(Collectors.toList()));
+        recurringBookings.checkFree(recurringSchedule);
+        RecurringSchedule savedRecurringSchedule = recurringSchedulesRepository.save(recurringSchedule);
+        changeLog.record(ChangeEventDTO.Entity.RECURRING_SCHEDULE, ChangeEventDTO.Action.CREATED, savedRecurringSchedule.getId());
+        versions.employeesChanged(employees.keySet());
+        return savedRecurringSchedule;
+    }
+
+    /**
+     * Cancel occurrences of a recurring schedule
+     * @param recurringScheduleId The id of the recurring schedule
+     * @param dates The dates of the occurrences to cancel
+     * @return The recurring schedule
+     * @throws EntityNotFoundException if the recurring schedule does not exist
+     */
+    public RecurringSchedule skipOccurrences(long recurringScheduleId, Collection<LocalDate> dates) {
+        RecurringSchedule recurringSchedule = recurringSchedulesRepository.findById(recurringScheduleId)
+                .orElseThrow(() -> EntityResolver.notFound("recurring schedule", Collections.singleton(recurringScheduleId)));
+        recurringSchedule.getSkippedDates().addAll(dates);
+        changeLog.record(ChangeEventDTO.Entity.RECURRING_SCHEDULE, ChangeEventDTO.Action.UPDATED, recurringScheduleId);
+        versions.employeesChanged(recurringSchedule.getEmployees().stream().map(Employee::getId).collect(Collectors.toSet()));
+        return recurringSchedule;
+    }
+
+    /**
+     * Append the occurrences of recurring schedules to schedules read without a date range. Each recurring schedule is
+     * expanded from its start date to its end date, or to {@link #recurrenceHorizonDays} days from today if it has none.
+     */
+    private List<Schedule> withAllOccurrences(List<Schedule> schedules, List<RecurringSchedule> recurringSchedules) {
+        if (recurringSchedules.isEmpty()) {
+            return schedules;
+        }
+        LocalDate horizon = LocalDate.now().plusDays(recurrenceHorizonDays);
+        List<Schedule> occurrences = new ArrayList<>();
+        for (RecurringSchedule recurringSchedule : recurringSchedules) {
+            LocalDate to = recurringSchedule.getEndDate() == null ? horizon : recurringSchedule.getEndDate();
+            occurrences.addAll(Occurrences.between(Collections.singletonList(recurringSchedule), recurringSchedule.getStartDate(), to));
+        }
+        occurrences.sort(Occurrences.BY_DATE);
+        List<Schedule> merged = new ArrayList<>(schedules);
+        merged.addAll(occurrences);
+        return merged;
+    }
 
-        return scheduleRepository.save(schedule);
+    private static Set<Long> flatten(List<List<Long>> idLists) {
+        return idLists.stream().flatMap(List::stream).collect(Collectors.toCollection(TreeSet::new));
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Assigns employees to the slots of one day so that nobody is given two slots.
+ *
+ * This is a maximum bipartite matching between slots, each with a headcount, and employees, found with augmenting
+ * paths: when every candidate of a slot is taken, an employee is moved to another slot they can also fill, which
+ * frees them up. Slots are filled scarcest first, which settles most of them without moving anybody.
+ */
+final class SlotMatcher {
+    private final List<BitSet> candidates;
+    private final List<Set<Integer>> assigned;
+    private final Map<Integer, Integer> slotOf = new HashMap<>();
+
+    private SlotMatcher(List<BitSet> candidates) {
+        this.candidates = candidates;
+        this.assigned = candidates.stream().map(c -> new LinkedHashSet<Integer>()).collect(Collectors.toList());
+    }
+
+    /**
+     * Matches employees to slots.
+     * @param candidates the ids of the employees able to fill each slot
+     * @param headcounts the number of employees wanted in each slot
+     * @return the ids of the employees assigned to each slot, in the same order as the slots
+     */
+    static List<List<Long>> match(List<BitSet> candidates, List<Integer> headcounts) {
+        SlotMatcher matcher = new SlotMatcher(candidates);
+        List<Integer> byScarcity = IntStream.range(0, candidates.size())
+                .boxed()
+                .sorted(Comparator.comparingDouble(slot -> (double) candidates.get(slot).cardinality()
+                        / Math.max(1, headcounts.get(slot))))
+                .collect(Collectors.toList());
+        for (int slot : byScarcity) {
+            for (int filled = 0; filled < headcounts.get(slot); filled++) {
+                if (!matcher.augment(slot, new BitSet())) {
+                    break;
+                }
+            }
+        }
+
+        List<List<Long>> employeeIds = new ArrayList<>(candidates.size());
+        for (Set<Integer> slotEmployees : matcher.assigned) {
+            employeeIds.add(slotEmployees.stream().sorted().map(Integer::longValue).collect(Collectors.toList()));
+        }
+        return employeeIds;
+    }
+
+    /**
+     * Finds one more employee for a slot, moving employees between slots if needed.
+     * @param slot the slot to grow
+     * @param visited the employees already tried while looking for this employee
+     * @return whether the slot got one more employee
+     */
+    private boolean augment(int slot, BitSet visited) {
+        BitSet slotCandidates = candidates.get(slot);
+        for (int employee = slotCandidates.nextSetBit(0); employee >= 0; employee = slotCandidates.nextSetBit(employee + 1)) {
+            if (visited.get(employee)) {
+                continue;
+            }
+            visited.set(employee);
+            Integer otherSlot = slotOf.get(employee);
+            if (otherSlot != null && (otherSlot == slot || !augment(otherSlot, visited))) {
+                continue;
+            }
+            if (otherSlot != null) {
+                assigned.get(otherSlot).remove(employee);
+            }
+            slotOf.put(employee, slot);
+            assigned.get(slot).add(employee);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package com.udacity.jdnd.course3.critter.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Hooks for keeping in-memory state consistent with the outcome of the surrounding transaction.
+ */
+final class TransactionCallbacks {
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * Runs the given action if the current transaction rolls back. Does nothing when no transaction is active.
+     * @param action the action that undoes an in-memory change made inside the transaction
+     */
+    static void afterRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the given action once the current transaction has committed, or right away when no transaction is active.
+     * It runs when the transaction completes, after the commit callbacks such as the cache evictions, so whoever sees
+     * the published change also reads the committed state.
+     * @param action the action that publishes a change made inside the transaction
+     */
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+}
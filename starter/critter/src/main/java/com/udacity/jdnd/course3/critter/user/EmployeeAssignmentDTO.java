@@ -0,0 +1,52 @@
+package com.udacity.jdnd.course3.critter.user;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents the employees planned for one slot of demand. A slot is only partly filled when not enough employees
+ * are available for it. Does not map to the database directly.
+ */
+public class EmployeeAssignmentDTO {
+    private LocalDate date;
+    private Set<EmployeeSkill> skills;
+    private int headcount;
+    private List<Long> employeeIds;
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public Set<EmployeeSkill> getSkills() {
+        return skills;
+    }
+
+    public void setSkills(Set<EmployeeSkill> skills) {
+        this.skills = skills;
+    }
+
+    public int getHeadcount() {
+        return headcount;
+    }
+
+    public void setHeadcount(int headcount) {
+        this.headcount = headcount;
+    }
+
+    public List<Long> getEmployeeIds() {
+        return employeeIds;
+    }
+
+    public void setEmployeeIds(List<Long> employeeIds) {
+        this.employeeIds = employeeIds;
+    }
+
+    public boolean isFilled() {
+        return employeeIds != null && employeeIds.size() >= headcount;
+    }
+}
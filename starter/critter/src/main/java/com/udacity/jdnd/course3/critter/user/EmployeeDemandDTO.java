@@ -0,0 +1,38 @@
+package com.udacity.jdnd.course3.critter.user;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Represents one slot of demand in an availability plan: a number of employees with the given skills needed on a
+ * date. Does not map to the database directly.
+ */
+public class EmployeeDemandDTO {
+    private LocalDate date;
+    private Set<EmployeeSkill> skills;
+    private int headcount;
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public Set<EmployeeSkill> getSkills() {
+        return skills;
+    }
+
+    public void setSkills(Set<EmployeeSkill> skills) {
+        this.skills = skills;
+    }
+
+    public int getHeadcount() {
+        return headcount;
+    }
+
+    public void setHeadcount(int headcount) {
+        this.headcount = headcount;
+    }
+}
@@ -0,0 +1,9 @@
+-- Adds the aggregate version columns the ETags of conditional GETs are built from, for databases created before the
+-- versions were persisted. Not needed with spring.jpa.hibernate.ddl-auto=create, which recreates the schema on
+-- startup.
+--
+-- Run once before starting the new version. Every aggregate starts at version 0, and the ETags handed out before are
+-- never matched again since they do not have the new format.
+
+alter table customer add column aggregate_version bigint not null default 0;
+alter table employee add column aggregate_version bigint not null default 0;
@@ -0,0 +1,21 @@
+-- Adds the version columns and fills the employee_slot table, for databases created before schedules claimed an
+-- employee_slot row per employee and date. Not needed with spring.jpa.hibernate.ddl-auto=create, which recreates the
+-- schema on startup.
+--
+-- Run once after creating the employee_slot table and its sequence, and before starting the new version. Where an
+-- employee was already booked twice on a date, only the earliest schedule claims the slot; the later ones stay
+-- readable but are not reported as conflicts.
+
+alter table schedule add column version bigint not null default 0;
+alter table employee add column version bigint not null default 0;
+
+insert into employee_slot (id, employee_id, date, schedule_id)
+select row_number() over (order by b.schedule_id, b.employee_id), b.employee_id, b.date, b.schedule_id
+from (select se.employees_id as employee_id, s.date as date, min(s.id) as schedule_id
+      from schedule s join schedule_employees se on se.schedule_id = s.id
+      where s.date is not null
+      group by se.employees_id, s.date) b;
+
+-- Hibernate's pooled optimizer treats the value it reads as the upper end of its next block of 50 ids, so the
+-- sequence must be at least 50 past the highest backfilled id for the first block not to reuse any of them.
+update employee_slot_seq set next_val = (select coalesce(max(id), 0) + 50 from employee_slot);
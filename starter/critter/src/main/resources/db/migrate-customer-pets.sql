@@ -0,0 +1,11 @@
+-- Moves pet ownership out of the customer_pets join table, for databases created before Customer.pets was mapped
+-- by Pet.customer. Not needed with spring.jpa.hibernate.ddl-auto=create, which recreates the schema on startup.
+--
+-- Run once before starting the new version. A pet assigned to a customer through POST /user/customer was only
+-- recorded in customer_pets, so where the two disagree the join table names the current owner.
+
+update pet
+set customer_id = (select cp.customer_id from customer_pets cp where cp.pets_id = pet.id)
+where exists (select 1 from customer_pets cp where cp.pets_id = pet.id and cp.customer_id <> pet.customer_id);
+
+drop table customer_pets;
@@ -0,0 +1,26 @@
+-- Moves the skills, days and activities sets out of their element collection tables into bitmask columns, for
+-- databases created before they were stored through EnumSetConverter. Not needed with
+-- spring.jpa.hibernate.ddl-auto=create, which recreates the schema on startup.
+--
+-- Run once before starting the new version. The element tables hold enum ordinals, and bit n of a mask stands for
+-- the constant with ordinal n.
+
+alter table employee add column skills integer not null default 0, add column days_available integer not null default 0;
+update employee set
+    skills = (select coalesce(bit_or(1 << t.skills), 0) from employee_skills t where t.employee_id = employee.id),
+    days_available = (select coalesce(bit_or(1 << t.days_available), 0) from employee_days_available t where t.employee_id = employee.id);
+
+alter table schedule add column activities integer not null default 0;
+update schedule set
+    activities = (select coalesce(bit_or(1 << t.activities), 0) from schedule_activities t where t.schedule_id = schedule.id);
+
+alter table recurring_schedule add column activities integer not null default 0, add column days_of_week integer not null default 0;
+update recurring_schedule set
+    activities = (select coalesce(bit_or(1 << t.activities), 0) from recurring_schedule_activities t where t.recurring_schedule_id = recurring_schedule.id),
+    days_of_week = (select coalesce(bit_or(1 << t.days_of_week), 0) from recurring_schedule_days_of_week t where t.recurring_schedule_id = recurring_schedule.id);
+
+drop table employee_skills;
+drop table employee_days_available;
+drop table schedule_activities;
+drop table recurring_schedule_activities;
+drop table recurring_schedule_days_of_week;
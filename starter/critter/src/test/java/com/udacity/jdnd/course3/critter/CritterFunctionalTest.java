@@ -1,24 +1,114 @@
 package com.udacity.jdnd.course3.critter;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.udacity.jdnd.course3.critter.config.CacheConfig;
+import com.udacity.jdnd.course3.critter.config.DatabaseConcurrencyLimiter;
+import com.udacity.jdnd.course3.critter.config.ExecutionConfig;
+import com.udacity.jdnd.course3.critter.config.LoadSheddingFilter;
+import com.udacity.jdnd.course3.critter.controller.ConflictAdvice;
+import com.udacity.jdnd.course3.critter.controller.EntityNotFoundAdvice;
+import com.udacity.jdnd.course3.critter.controller.EventController;
+import com.udacity.jdnd.course3.critter.controller.ImportController;
 import com.udacity.jdnd.course3.critter.controller.ScheduleController;
 import com.udacity.jdnd.course3.critter.controller.UserController;
 import com.udacity.jdnd.course3.critter.controller.PetController;
+import com.udacity.jdnd.course3.critter.dto.ChangeEventDTO;
+import com.udacity.jdnd.course3.critter.dto.ChangeEventsDTO;
+import com.udacity.jdnd.course3.critter.dto.ImportReportDTO;
+import com.udacity.jdnd.course3.critter.dto.LongIdList;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.EmployeeSlot;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.metrics.SqlStatementCounter;
 import com.udacity.jdnd.course3.critter.pet.PetDTO;
 import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.repository.EmployeeSlotRepository;
+import com.udacity.jdnd.course3.critter.repository.ScheduleCursor;
+import com.udacity.jdnd.course3.critter.schedule.RecurringScheduleDTO;
 import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.AggregateVersions;
+import com.udacity.jdnd.course3.critter.service.EmployeeAvailabilityIndex;
+import com.udacity.jdnd.course3.critter.service.EmployeeBookingIndex;
+import com.udacity.jdnd.course3.critter.service.EmployeeService;
+import com.udacity.jdnd.course3.critter.service.EntityResolver;
+import com.udacity.jdnd.course3.critter.service.ImportFormat;
+import com.udacity.jdnd.course3.critter.service.PetsService;
+import com.udacity.jdnd.course3.critter.service.ScheduleConflictException;
 import com.udacity.jdnd.course3.critter.user.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.BeanFactoryTransactionAttributeSourceAdvisor;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.ServletException;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.DayOfWeek;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -43,6 +133,54 @@ public class CritterFunctionalTest {
     @Autowired
     private ScheduleController scheduleController;
 
+    @Autowired
+    private ImportController importController;
+
+    @Autowired
+    private EventController eventController;
+
+    @Autowired
+    private EmployeeSlotRepository employeeSlotRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private PetsService petsService;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private AggregateVersions aggregateVersions;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private SqlStatementCounter sqlStatementCounter;
+
     @Test
     public void testCreateCustomer(){
         CustomerDTO customerDTO = createCustomerDTO();
@@ -171,7 +309,66 @@ public class CritterFunctionalTest {
     }
 
     @Test
-    public void testSchedulePetsForServiceWithEmployee() {
+    public void testFindEmployeesExcludesBookedEmployees() {
+        ScheduleDTO booked = populateSchedule(1, 1, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.PETTING));
+
+        EmployeeDTO freeTemp = createEmployeeDTO();
+        freeTemp.setDaysAvailable(Sets.newHashSet(DayOfWeek.WEDNESDAY));
+        EmployeeDTO free = userController.saveEmployee(freeTemp);
+
+        EmployeeRequestDTO sameDay = new EmployeeRequestDTO();
+        sameDay.setDate(LocalDate.of(2019, 12, 25));
+        sameDay.setSkills(Sets.newHashSet(EmployeeSkill.PETTING));
+        Set<Long> sameDayIds = userController.findEmployeesForService(sameDay).stream().map(EmployeeDTO::getId).collect(Collectors.toSet());
+        Assertions.assertEquals(Sets.newHashSet(free.getId()), sameDayIds);
+
+        //the booked employee is available again on the following wednesday
+        EmployeeRequestDTO nextWeek = new EmployeeRequestDTO();
+        nextWeek.setDate(LocalDate.of(2020, 1, 1));
+        nextWeek.setSkills(Sets.newHashSet(EmployeeSkill.PETTING));
+        Set<Long> nextWeekIds = userController.findEmployeesForService(nextWeek).stream().map(EmployeeDTO::getId).collect(Collectors.toSet());
+        Assertions.assertEquals(Sets.newHashSet(free.getId(), booked.getEmployeeIds().get(0)), nextWeekIds);
+    }
+
+    @Test
+    public void testEmployeeSkillsAndDaysAreBitmaskColumns() {
+        EmployeeDTO employeeTemp = createEmployeeDTO();
+        employeeTemp.setSkills(Sets.newHashSet(EmployeeSkill.PETTING, EmployeeSkill.SHAVING));
+        employeeTemp.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY));
+        long employeeId = userController.saveEmployee(employeeTemp).getId();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        entityManager.flush();
+        entityManager.clear();
+
+        Object[] masks = (Object[]) entityManager.createNativeQuery("select skills, days_available from employee where id = :id")
+                .setParameter("id", employeeId).getSingleResult();
+        Assertions.assertEquals(1 << EmployeeSkill.PETTING.ordinal() | 1 << EmployeeSkill.SHAVING.ordinal(), ((Number) masks[0]).intValue());
+        Assertions.assertEquals(1 << DayOfWeek.MONDAY.ordinal() | 1 << DayOfWeek.WEDNESDAY.ordinal(), ((Number) masks[1]).intValue());
+
+        //an employee and its sets are one statement, with no collection to load
+        statistics.clear();
+        EmployeeDTO retrieved = userController.getEmployee(employeeId);
+        Assertions.assertEquals(employeeTemp.getSkills(), retrieved.getSkills());
+        Assertions.assertEquals(employeeTemp.getDaysAvailable(), retrieved.getDaysAvailable());
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(0, statistics.getCollectionLoadCount());
+
+        //skills and day are matched in SQL
+        EmployeeRequestDTO request = new EmployeeRequestDTO();
+        request.setDate(LocalDate.of(2019, 12, 23)); //monday
+        request.setSkills(Sets.newHashSet(EmployeeSkill.SHAVING));
+        entityManager.clear();
+        statistics.clear();
+        List<EmployeeDTO> found = userController.findEmployeesForService(request);
+        Assertions.assertEquals(Lists.newArrayList(employeeId), found.stream().map(EmployeeDTO::getId).collect(Collectors.toList()));
+        //the recurring schedules running on the date are read in a second statement
+        Assertions.assertEquals(2, statistics.getPrepareStatementCount());
+        request.setSkills(Sets.newHashSet(EmployeeSkill.SHAVING, EmployeeSkill.WALKING));
+        Assertions.assertTrue(userController.findEmployeesForService(request).isEmpty());
+    }
+
+    @Test
+    public void testSchedulePetsForServiceWithEmployee() throws IOException {
         EmployeeDTO employeeTemp = createEmployeeDTO();
         employeeTemp.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY));
         EmployeeDTO employeeDTO = userController.saveEmployee(employeeTemp);
@@ -186,7 +383,7 @@ public class CritterFunctionalTest {
         Set<EmployeeSkill> skillSet =  Sets.newHashSet(EmployeeSkill.PETTING);
 
         scheduleController.createSchedule(createScheduleDTO(petList, employeeList, date, skillSet));
-        ScheduleDTO scheduleDTO = scheduleController.getAllSchedules().get(0);
+        ScheduleDTO scheduleDTO = getAllSchedules().get(0);
 
         Assertions.assertEquals(scheduleDTO.getActivities(), skillSet);
         Assertions.assertEquals(scheduleDTO.getDate(), date);
@@ -241,6 +438,1042 @@ public class CritterFunctionalTest {
         compareSchedules(sched3, scheds2c.get(1));
     }
 
+    @Test
+    public void testCreateSchedulesInBatch() throws IOException {
+        ScheduleDTO existing = populateSchedule(2, 2, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.FEEDING));
+        List<Long> employeeIds = existing.getEmployeeIds();
+        List<Long> petIds = existing.getPetIds();
+
+        List<ScheduleDTO> batch = IntStream.range(0, 10)
+                .mapToObj(i -> createScheduleDTO(Lists.newArrayList(petIds.get(i % 2)), Lists.newArrayList(employeeIds.get(i % 2)),
+                        LocalDate.of(2020, 1, 1).plusDays(i), Sets.newHashSet(EmployeeSkill.WALKING)))
+                .collect(Collectors.toList());
+        List<ScheduleDTO> created = scheduleController.createSchedules(batch);
+        Assertions.assertEquals(10, created.size());
+        for (int i = 0; i < batch.size(); i++) {
+            compareSchedules(batch.get(i), created.get(i));
+        }
+        Assertions.assertEquals(6, scheduleController.getScheduleForEmployee(employeeIds.get(0)).size());
+
+        //a batch referencing an unknown pet is rejected as a whole
+        ScheduleDTO unknownPet = createScheduleDTO(Lists.newArrayList(-1L), employeeIds, LocalDate.of(2020, 2, 1), Sets.newHashSet(EmployeeSkill.WALKING));
+        Assertions.assertThrows(EntityNotFoundException.class, () -> scheduleController.createSchedules(Lists.newArrayList(batch.get(0), unknownPet)));
+        Assertions.assertEquals(11, getAllSchedules().size());
+    }
+
+    @Test
+    public void testScheduleLookupsUseBoundedQueries() {
+        ScheduleDTO sched1 = populateSchedule(2, 2, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+        ScheduleDTO sched2 = populateSchedule(3, 1, LocalDate.of(2019, 12, 26), Sets.newHashSet(EmployeeSkill.PETTING));
+        ScheduleDTO sched3 = populateSchedule(1, 3, LocalDate.of(2019, 12, 27), Sets.newHashSet(EmployeeSkill.SHAVING, EmployeeSkill.PETTING));
+        long ownerId = userController.getOwnerByPet(sched3.getPetIds().get(0)).getId();
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        entityManager.flush();
+        entityManager.clear();
+
+        //each lookup loads its schedules with their employees, pets and activities in one statement, and the
+        //employee and pet lookups read their recurring schedules in a second statement. They load every employee and
+        //pet of the schedules they find, not only the ones they were looked up by
+        statistics.clear();
+        compareSchedules(sched2, scheduleController.getScheduleForEmployee(sched2.getEmployeeIds().get(2)).get(0));
+        Assertions.assertEquals(2, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        compareSchedules(sched1, scheduleController.getScheduleForPet(sched1.getPetIds().get(1)).get(0));
+        Assertions.assertEquals(2, statistics.getPrepareStatementCount());
+
+        //the customer lookup reads the per-customer schedule view
+        entityManager.clear();
+        statistics.clear();
+        List<ScheduleDTO> forCustomer = scheduleController.getScheduleForCustomer(ownerId);
+        Assertions.assertEquals(1, forCustomer.size());
+        compareSchedules(sched3, forCustomer.get(0));
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testSavePetIsOneInsertWhateverThePetCount() {
+        CustomerDTO owner = userController.saveCustomer(createCustomerDTO());
+        PetDTO petDTO = createPetDTO();
+        petDTO.setOwnerId(owner.getId());
+        List<Long> petIds = IntStream.range(0, 5).mapToObj(i -> petController.savePet(petDTO).getId()).collect(Collectors.toList());
+
+        //the owner is stored on the pet only, so the owner's other pets are neither read nor rewritten
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        petIds.add(petController.savePet(petDTO).getId());
+        entityManager.flush();
+        Assertions.assertEquals(1, statistics.getEntityInsertCount());
+        Assertions.assertEquals(0, statistics.getEntityUpdateCount());
+        Assertions.assertEquals(0, statistics.getCollectionLoadCount());
+        Assertions.assertEquals(0, statistics.getCollectionRecreateCount() + statistics.getCollectionUpdateCount()
+                + statistics.getCollectionRemoveCount());
+        entityManager.clear();
+        Assertions.assertEquals(petIds, userController.getOwnerByPet(petIds.get(0)).getPetIds());
+
+        //a new customer listing pets takes them over from their previous owner
+        CustomerDTO customerDTO = createCustomerDTO();
+        customerDTO.setPetIds(Lists.newArrayList(petIds.get(1), petIds.get(3), petIds.get(1)));
+        CustomerDTO newOwner = userController.saveCustomer(customerDTO);
+        Assertions.assertEquals(Lists.newArrayList(petIds.get(1), petIds.get(3)), newOwner.getPetIds());
+        entityManager.flush();
+        entityManager.clear();
+        Assertions.assertEquals(newOwner.getId(), petController.getPet(petIds.get(3)).getOwnerId());
+        Assertions.assertEquals(4, userController.getOwnerByPet(petIds.get(0)).getPetIds().size());
+    }
+
+    @Test
+    public void testRecurringSchedulesAreExpandedWhenRead() {
+        ScheduleDTO stored = populateSchedule(1, 2, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.FEEDING));
+        long employeeId = stored.getEmployeeIds().get(0);
+        long petId = stored.getPetIds().get(0);
+
+        //weekly on Mondays and Thursdays in December, with one Thursday cancelled up front
+        RecurringScheduleDTO weekly = createRecurringScheduleDTO(employeeId, petId, LocalDate.of(2019, 12, 2),
+                Sets.newHashSet(DayOfWeek.MONDAY, DayOfWeek.THURSDAY), 1);
+        weekly.setEndDate(LocalDate.of(2019, 12, 31));
+        weekly.setSkippedDates(Sets.newHashSet(LocalDate.of(2019, 12, 12)));
+        weekly = scheduleController.createRecurringSchedule(weekly);
+
+        //every other Tuesday with no end, for the employee and the other pet
+        RecurringScheduleDTO biweekly = createRecurringScheduleDTO(employeeId, stored.getPetIds().get(1),
+                LocalDate.of(2019, 12, 3), Sets.newHashSet(DayOfWeek.TUESDAY), 2);
+        biweekly = scheduleController.createRecurringSchedule(biweekly);
+
+        //the stored schedules come first, then the occurrences in date order
+        List<ScheduleDTO> forPet = scheduleController.getScheduleForPet(petId);
+        Assertions.assertEquals(9, forPet.size());
+        compareSchedules(stored, forPet.get(0));
+        Assertions.assertEquals(0, forPet.get(0).getRecurringScheduleId());
+        Assertions.assertEquals(LocalDate.of(2019, 12, 2), forPet.get(1).getDate());
+        Assertions.assertEquals(LocalDate.of(2019, 12, 30), forPet.get(8).getDate());
+        Assertions.assertEquals(weekly.getId(), forPet.get(1).getRecurringScheduleId());
+        Assertions.assertEquals(Lists.newArrayList(employeeId), forPet.get(1).getEmployeeIds());
+        Assertions.assertEquals(weekly.getActivities(), forPet.get(1).getActivities());
+        Assertions.assertTrue(forPet.stream().noneMatch(schedule -> schedule.getDate().equals(LocalDate.of(2019, 12, 12))));
+
+        //a date range merges both schedules of the employee with the stored one, in date order
+        LocalDate from = LocalDate.of(2019, 12, 20);
+        LocalDate to = LocalDate.of(2019, 12, 31);
+        Assertions.assertEquals(Lists.newArrayList(23, 25, 26, 30, 31),
+                scheduleController.getScheduleForEmployeeBetween(employeeId, from, to, null).stream()
+                        .map(schedule -> schedule.getDate().getDayOfMonth()).collect(Collectors.toList()));
+        Assertions.assertEquals(biweekly.getId(),
+                scheduleController.getScheduleForEmployeeBetween(employeeId, from, to, null).get(4).getRecurringScheduleId());
+        Assertions.assertTrue(scheduleController.getScheduleForEmployeeBetween(employeeId, from, to, EmployeeSkill.SHAVING).isEmpty());
+
+        //cancelled occurrences are left out from then on
+        scheduleController.skipOccurrences(weekly.getId(), Lists.newArrayList(LocalDate.of(2019, 12, 23)));
+        Assertions.assertEquals(Lists.newArrayList(25, 26, 30),
+                scheduleController.getScheduleForPetBetween(petId, from, to, null).stream()
+                        .map(schedule -> schedule.getDate().getDayOfMonth()).collect(Collectors.toList()));
+        Assertions.assertThrows(EntityNotFoundException.class,
+                () -> scheduleController.skipOccurrences(-1L, Lists.newArrayList(LocalDate.of(2019, 12, 23))));
+
+        //an occurrence lists every pet of its recurring schedule, not only the one it was looked up by
+        RecurringScheduleDTO bothPets = createRecurringScheduleDTO(employeeId, petId, LocalDate.of(2020, 1, 6),
+                Sets.newHashSet(DayOfWeek.MONDAY), 1);
+        bothPets.setPetIds(stored.getPetIds());
+        bothPets.setEndDate(LocalDate.of(2020, 1, 6));
+        scheduleController.createRecurringSchedule(bothPets);
+        entityManager.flush();
+        entityManager.clear();
+        Assertions.assertEquals(stored.getPetIds(), scheduleController.getScheduleForPetBetween(stored.getPetIds().get(1),
+                LocalDate.of(2020, 1, 6), LocalDate.of(2020, 1, 6), null).get(0).getPetIds());
+    }
+
+    @Test
+    public void testRecurringAndOneOffSchedulesDoNotDoubleBook() {
+        ScheduleDTO stored = populateSchedule(1, 1, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.WALKING));
+        long employeeId = stored.getEmployeeIds().get(0);
+        long petId = stored.getPetIds().get(0);
+
+        //a recurring schedule cannot take the date of a one-off schedule of its employee
+        RecurringScheduleDTO wednesdays = createRecurringScheduleDTO(employeeId, petId, LocalDate.of(2019, 12, 4),
+                Sets.newHashSet(DayOfWeek.WEDNESDAY), 1);
+        wednesdays.setEndDate(LocalDate.of(2020, 1, 31));
+        Assertions.assertThrows(ScheduleConflictException.class, () -> scheduleController.createRecurringSchedule(wednesdays));
+        wednesdays.setSkippedDates(Sets.newHashSet(LocalDate.of(2019, 12, 25)));
+        long wednesdaysId = scheduleController.createRecurringSchedule(wednesdays).getId();
+
+        //a one-off schedule cannot take the date of an occurrence, and the employee is not available on it
+        LocalDate occurrence = LocalDate.of(2020, 1, 8);
+        Assertions.assertThrows(ScheduleConflictException.class, () -> scheduleController.createSchedule(
+                createScheduleDTO(Lists.newArrayList(petId), Lists.newArrayList(employeeId), occurrence, Sets.newHashSet(EmployeeSkill.WALKING))));
+        EmployeeRequestDTO request = new EmployeeRequestDTO();
+        request.setDate(occurrence);
+        request.setSkills(Sets.newHashSet(EmployeeSkill.WALKING));
+        Assertions.assertTrue(userController.findEmployeesForService(request).stream().noneMatch(employee -> employee.getId() == employeeId));
+        request.setDate(LocalDate.of(2020, 2, 5));
+        Assertions.assertTrue(userController.findEmployeesForService(request).stream().anyMatch(employee -> employee.getId() == employeeId));
+
+        //another recurring schedule of the employee cannot share a date with the first one, unless it starts after it ends
+        RecurringScheduleDTO everyThirdWednesday = createRecurringScheduleDTO(employeeId, petId, LocalDate.of(2019, 12, 11),
+                Sets.newHashSet(DayOfWeek.WEDNESDAY), 3);
+        Assertions.assertThrows(ScheduleConflictException.class, () -> scheduleController.createRecurringSchedule(everyThirdWednesday));
+        everyThirdWednesday.setStartDate(LocalDate.of(2020, 2, 5));
+        scheduleController.createRecurringSchedule(everyThirdWednesday);
+
+        //a cancelled occurrence frees its date
+        scheduleController.skipOccurrences(wednesdaysId, Lists.newArrayList(occurrence));
+        scheduleController.createSchedule(createScheduleDTO(Lists.newArrayList(petId), Lists.newArrayList(employeeId), occurrence, Sets.newHashSet(EmployeeSkill.WALKING)));
+    }
+
+    @Test
+    public void testPageAndStreamPets() throws IOException {
+        CustomerDTO customerDTO = userController.saveCustomer(createCustomerDTO());
+        List<Long> petIds = IntStream.range(0, 5)
+                .mapToObj(i -> createPetDTO())
+                .map(p -> {
+                    p.setOwnerId(customerDTO.getId());
+                    return petController.savePet(p).getId();
+                }).collect(Collectors.toList());
+
+        //walk the pets two at a time, each page starting after the last id of the previous one
+        List<PetDTO> firstPage = petController.getPetsPage(0, 2);
+        List<PetDTO> secondPage = petController.getPetsPage(firstPage.get(1).getId(), 2);
+        List<PetDTO> lastPage = petController.getPetsPage(secondPage.get(1).getId(), 2);
+        Assertions.assertEquals(petIds.subList(0, 2), firstPage.stream().map(PetDTO::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(petIds.subList(2, 4), secondPage.stream().map(PetDTO::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(petIds.subList(4, 5), lastPage.stream().map(PetDTO::getId).collect(Collectors.toList()));
+        Assertions.assertTrue(petController.getPetsPage(lastPage.get(0).getId(), 2).isEmpty());
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        petController.streamPets(petIds.get(0), response);
+        String[] lines = response.getContentAsString().trim().split("\n");
+        Assertions.assertEquals("application/x-ndjson", response.getContentType());
+        Assertions.assertEquals(4, lines.length);
+        Assertions.assertTrue(lines[0].contains("\"id\":" + petIds.get(1)));
+    }
+
+    @Test
+    public void testCachedLookupsOnlyCacheCommittedData() {
+        CustomerDTO customerDTO = userController.saveCustomer(createCustomerDTO());
+        PetDTO petDTO = createPetDTO();
+        petDTO.setOwnerId(customerDTO.getId());
+        PetDTO newPet = petController.savePet(petDTO);
+        EmployeeDTO employeeDTO = userController.saveEmployee(createEmployeeDTO());
+        entityManager.flush();
+        entityManager.clear();
+
+        //lookups load everything they return, since cached entities are used after their session is gone
+        CustomerDTO owner = userController.getOwnerByPet(newPet.getId());
+        EmployeeDTO employee = userController.getEmployee(employeeDTO.getId());
+        Assertions.assertEquals(Lists.newArrayList(newPet.getId()), owner.getPetIds());
+        Assertions.assertEquals(employeeDTO.getSkills(), employee.getSkills());
+
+        //nothing read inside this transaction is cached until it commits, and it is rolled back
+        Assertions.assertNull(cacheManager.getCache(CacheConfig.PETS).get(newPet.getId()));
+        Assertions.assertNull(cacheManager.getCache(CacheConfig.OWNERS).get(newPet.getId()));
+        Assertions.assertNull(cacheManager.getCache(CacheConfig.EMPLOYEES).get(employeeDTO.getId()));
+        Assertions.assertThrows(EntityNotFoundException.class, () -> userController.getEmployee(-1L));
+    }
+
+    @Test
+    public void testLookupsRacingAWriteDoNotCacheTheOldRow() {
+        TransactionTemplate committed = new TransactionTemplate(transactionManager);
+        committed.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        long customerId = committed.execute(status -> userController.saveCustomer(createCustomerDTO()).getId());
+        PetDTO petDTO = createPetDTO();
+        petDTO.setOwnerId(customerId);
+        long petId = committed.execute(status -> petController.savePet(petDTO).getId());
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            //the lookup misses and reads the pet, then a rename commits and evicts it before the lookup's put lands
+            committed.execute(status -> {
+                Assertions.assertEquals(petDTO.getName(), petsService.getPetById(petId).getName());
+                try {
+                    writer.submit(() -> committed.execute(rename -> {
+                        Pet pet = new Pet();
+                        pet.setId(petId);
+                        pet.setType(petDTO.getType());
+                        pet.setName("Renamed");
+                        return petsService.savePet(pet, customerId);
+                    })).get(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            });
+
+            //the put of the old row is dropped, so the next lookup reads the rename
+            Assertions.assertNull(cacheManager.getCache(CacheConfig.PETS).get(petId));
+            Assertions.assertEquals("Renamed", committed.execute(status -> petsService.getPetById(petId).getName()));
+            Assertions.assertEquals("Renamed", committed.execute(status -> petsService.getPetById(petId).getName()));
+            Assertions.assertNotNull(cacheManager.getCache(CacheConfig.PETS).get(petId));
+        } finally {
+            writer.shutdown();
+            committed.execute(status -> {
+                deleteWhereIn("delete from pet where id in :ids", Lists.newArrayList(petId));
+                return deleteWhereIn("delete from customer where id in :ids", Lists.newArrayList(customerId));
+            });
+        }
+    }
+
+    @Test
+    public void testSavingAPetOnlyEvictsItsOwner() {
+        TransactionTemplate committed = new TransactionTemplate(transactionManager);
+        committed.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        List<Long> customerIds = committed.execute(status -> Lists.newArrayList(
+                userController.saveCustomer(createCustomerDTO()).getId(),
+                userController.saveCustomer(createCustomerDTO()).getId()));
+        List<Long> petIds = Lists.newArrayList();
+        try {
+            for (Long customerId : customerIds) {
+                PetDTO petDTO = createPetDTO();
+                petDTO.setOwnerId(customerId);
+                petIds.add(committed.execute(status -> petController.savePet(petDTO).getId()));
+            }
+            petIds.forEach(petId -> committed.execute(status -> userController.getOwnerByPet(petId)));
+            Assertions.assertNotNull(cacheManager.getCache(CacheConfig.OWNERS).get(petIds.get(0)));
+            Assertions.assertNotNull(cacheManager.getCache(CacheConfig.OWNERS).get(petIds.get(1)));
+
+            //a new pet of the first customer evicts that customer only, once it commits
+            PetDTO petDTO = createPetDTO();
+            petDTO.setOwnerId(customerIds.get(0));
+            petIds.add(committed.execute(status -> {
+                long petId = petController.savePet(petDTO).getId();
+                Assertions.assertNotNull(cacheManager.getCache(CacheConfig.OWNERS).get(petIds.get(0)));
+                return petId;
+            }));
+            Assertions.assertNull(cacheManager.getCache(CacheConfig.OWNERS).get(petIds.get(0)));
+            Assertions.assertNotNull(cacheManager.getCache(CacheConfig.OWNERS).get(petIds.get(1)));
+            Assertions.assertEquals(2, userController.getOwnerByPet(petIds.get(0)).getPetIds().size());
+        } finally {
+            committed.execute(status -> {
+                deleteWhereIn("delete from pet where id in :ids", petIds);
+                return deleteWhereIn("delete from customer where id in :ids", customerIds);
+            });
+        }
+    }
+
+    @Test
+    public void testFindSchedulesForCustomerInDateOrder() {
+        CustomerDTO customerDTO = userController.saveCustomer(createCustomerDTO());
+        List<Long> petIds = IntStream.range(0, 2)
+                .mapToObj(i -> createPetDTO())
+                .map(p -> {
+                    p.setOwnerId(customerDTO.getId());
+                    return petController.savePet(p).getId();
+                }).collect(Collectors.toList());
+        EmployeeDTO employeeDTO = userController.saveEmployee(createEmployeeDTO());
+        List<Long> employeeIds = Lists.newArrayList(employeeDTO.getId());
+        Set<EmployeeSkill> activities = Sets.newHashSet(EmployeeSkill.FEEDING);
+
+        //a schedule with both pets is listed once, and later dates saved first still come back in date order
+        ScheduleDTO both = scheduleController.createSchedule(createScheduleDTO(petIds, employeeIds, LocalDate.of(2019, 12, 27), activities));
+        ScheduleDTO first = scheduleController.createSchedule(createScheduleDTO(petIds.subList(0, 1), employeeIds, LocalDate.of(2019, 12, 25), activities));
+        List<ScheduleDTO> batch = scheduleController.createSchedules(Lists.newArrayList(
+                createScheduleDTO(petIds.subList(1, 2), employeeIds, LocalDate.of(2019, 12, 26), activities)));
+
+        List<ScheduleDTO> forCustomer = scheduleController.getScheduleForCustomer(customerDTO.getId());
+        Assertions.assertEquals(Lists.newArrayList(first.getId(), batch.get(0).getId(), both.getId()),
+                forCustomer.stream().map(ScheduleDTO::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSchedulesFollowPetsToTheirNewOwner() {
+        LocalDate date = LocalDate.of(2019, 12, 25);
+        ScheduleDTO schedule = populateSchedule(1, 2, date, Sets.newHashSet(EmployeeSkill.FEEDING));
+        long previousOwnerId = userController.getOwnerByPet(schedule.getPetIds().get(0)).getId();
+
+        //moving one pet links its schedule to the new owner, and the previous owner keeps it through the other pet
+        CustomerDTO newOwnerDTO = createCustomerDTO();
+        newOwnerDTO.setPetIds(Lists.newArrayList(schedule.getPetIds().get(0)));
+        long newOwnerId = userController.saveCustomer(newOwnerDTO).getId();
+        Assertions.assertEquals(Lists.newArrayList(schedule.getId()), scheduleController.getScheduleForCustomer(newOwnerId)
+                .stream().map(ScheduleDTO::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(Lists.newArrayList(schedule.getId()), scheduleController.getScheduleForCustomer(previousOwnerId)
+                .stream().map(ScheduleDTO::getId).collect(Collectors.toList()));
+
+        //moving the other pet through savePet unlinks the previous owner
+        Pet pet = new Pet();
+        pet.setId(schedule.getPetIds().get(1));
+        pet.setType(PetType.CAT);
+        pet.setName("Kilo");
+        petsService.savePet(pet, newOwnerId);
+        Assertions.assertTrue(scheduleController.getScheduleForCustomer(previousOwnerId).isEmpty());
+        Assertions.assertEquals(1, scheduleController.getScheduleForCustomer(newOwnerId).size());
+        Assertions.assertEquals(Lists.newArrayList(schedule.getId()), scheduleController.getScheduleForCustomerBetween(newOwnerId, date, date, null)
+                .stream().map(ScheduleDTO::getId).collect(Collectors.toList()));
+        Assertions.assertTrue(scheduleController.getScheduleForCustomerBetween(previousOwnerId, date, date, null).isEmpty());
+    }
+
+    @Test
+    public void testFindSchedulesWithinDateRange() {
+        ScheduleDTO before = populateSchedule(1, 1, LocalDate.of(2019, 12, 22), Sets.newHashSet(EmployeeSkill.FEEDING));
+        ScheduleDTO start = populateSchedule(1, 1, LocalDate.of(2019, 12, 23), Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+        ScheduleDTO end = populateSchedule(1, 1, LocalDate.of(2019, 12, 29), Sets.newHashSet(EmployeeSkill.PETTING));
+        ScheduleDTO after = populateSchedule(1, 1, LocalDate.of(2019, 12, 30), Sets.newHashSet(EmployeeSkill.FEEDING));
+        LocalDate from = LocalDate.of(2019, 12, 23);
+        LocalDate to = LocalDate.of(2019, 12, 29);
+
+        //both ends of the range are included, in date order
+        List<ScheduleDTO> week = scheduleController.getSchedulesBetween(from, to, null);
+        Assertions.assertEquals(2, week.size());
+        compareSchedules(start, week.get(0));
+        compareSchedules(end, week.get(1));
+
+        List<ScheduleDTO> feeding = scheduleController.getSchedulesBetween(from, to, EmployeeSkill.FEEDING);
+        Assertions.assertEquals(1, feeding.size());
+        compareSchedules(start, feeding.get(0));
+
+        Assertions.assertEquals(1, scheduleController.getScheduleForPetBetween(end.getPetIds().get(0), from, to, null).size());
+        Assertions.assertTrue(scheduleController.getScheduleForPetBetween(before.getPetIds().get(0), from, to, null).isEmpty());
+        Assertions.assertEquals(1, scheduleController.getScheduleForEmployeeBetween(start.getEmployeeIds().get(0), from, to, EmployeeSkill.WALKING).size());
+        Assertions.assertTrue(scheduleController.getScheduleForEmployeeBetween(start.getEmployeeIds().get(0), from, to, EmployeeSkill.PETTING).isEmpty());
+        Assertions.assertTrue(scheduleController.getScheduleForEmployeeBetween(after.getEmployeeIds().get(0), from, to, null).isEmpty());
+
+        Long ownerId = userController.getOwnerByPet(end.getPetIds().get(0)).getId();
+        compareSchedules(end, scheduleController.getScheduleForCustomerBetween(ownerId, from, to, EmployeeSkill.PETTING).get(0));
+        Assertions.assertTrue(scheduleController.getScheduleForCustomerBetween(ownerId, from, to, EmployeeSkill.FEEDING).isEmpty());
+    }
+
+    @Test
+    public void testBookingIndexOnlyKeepsDatesFromToday() {
+        AtomicReference<LocalDate> today = new AtomicReference<>(LocalDate.of(2020, 1, 10));
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return today.get().atStartOfDay(ZoneOffset.UTC).toInstant();
+            }
+        };
+        EmployeeBookingIndex index = new EmployeeBookingIndex(clock);
+
+        //past bookings are not loaded
+        index.load(LocalDate.of(2020, 1, 9), 1L);
+        index.load(LocalDate.of(2020, 1, 10), 1L);
+        index.load(LocalDate.of(2020, 1, 11), 2L);
+        Assertions.assertTrue(index.bookedOn(LocalDate.of(2020, 1, 9)).isEmpty());
+        Assertions.assertTrue(index.bookedOn(LocalDate.of(2020, 1, 10)).get(1));
+
+        //the first claim of a day drops the dates that have passed
+        today.set(LocalDate.of(2020, 1, 11));
+        index.claim(LocalDate.of(2020, 1, 12), Lists.newArrayList(3L));
+        Assertions.assertTrue(index.bookedOn(LocalDate.of(2020, 1, 10)).isEmpty());
+        Assertions.assertTrue(index.bookedOn(LocalDate.of(2020, 1, 11)).get(2));
+        Assertions.assertTrue(index.bookedOn(LocalDate.of(2020, 1, 12)).get(3));
+
+        //a past date can still be claimed, and is kept until the next day
+        index.claim(LocalDate.of(2020, 1, 5), Lists.newArrayList(4L));
+        Assertions.assertThrows(ScheduleConflictException.class, () -> index.claim(LocalDate.of(2020, 1, 5), Lists.newArrayList(4L)));
+        today.set(LocalDate.of(2020, 1, 12));
+        index.claim(LocalDate.of(2020, 1, 12), Lists.newArrayList(5L));
+        Assertions.assertTrue(index.bookedOn(LocalDate.of(2020, 1, 5)).isEmpty());
+        Assertions.assertTrue(index.bookedOn(LocalDate.of(2020, 1, 11)).isEmpty());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testPlanAvailabilityForManySlots() {
+        //the availability index only holds committed employees, so everything here is committed and deleted afterwards
+        LocalDate monday = LocalDate.of(2019, 12, 23);
+        LocalDate nextMonday = LocalDate.of(2019, 12, 30);
+        LocalDate thirdMonday = LocalDate.of(2020, 1, 6);
+        ScheduleDTO booked = populateSchedule(1, 1, monday, Sets.newHashSet(EmployeeSkill.FEEDING));
+        List<Long> employeeIds = Lists.newArrayList(booked.getEmployeeIds());
+        List<Long> recurringScheduleIds = Lists.newArrayList();
+        try {
+            EmployeeDTO feederAndPetter = createEmployeeDTO();
+            feederAndPetter.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.PETTING));
+            feederAndPetter.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY));
+            long both = userController.saveEmployee(feederAndPetter).getId();
+            employeeIds.add(both);
+            EmployeeDTO feeder = createEmployeeDTO();
+            feeder.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING));
+            feeder.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY));
+            long feederId = userController.saveEmployee(feeder).getId();
+            employeeIds.add(feederId);
+            RecurringScheduleDTO thirdMondayOnly = createRecurringScheduleDTO(feederId, booked.getPetIds().get(0), thirdMonday,
+                    Sets.newHashSet(DayOfWeek.MONDAY), 1);
+            thirdMondayOnly.setEndDate(thirdMonday);
+            recurringScheduleIds.add(scheduleController.createRecurringSchedule(thirdMondayOnly).getId());
+
+            List<EmployeeAssignmentDTO> plan = userController.planAvailability(Lists.newArrayList(
+                    createEmployeeDemandDTO(monday, EmployeeSkill.FEEDING, 1),
+                    createEmployeeDemandDTO(monday, EmployeeSkill.PETTING, 1),
+                    createEmployeeDemandDTO(nextMonday, EmployeeSkill.FEEDING, 3),
+                    createEmployeeDemandDTO(monday, EmployeeSkill.WALKING, 1),
+                    createEmployeeDemandDTO(thirdMonday, EmployeeSkill.FEEDING, 3)));
+
+            //the only petter takes the petting slot, the already booked employee is only free next week
+            Assertions.assertEquals(Lists.newArrayList(feederId), plan.get(0).getEmployeeIds());
+            Assertions.assertEquals(Lists.newArrayList(both), plan.get(1).getEmployeeIds());
+            Assertions.assertEquals(Sets.newHashSet(booked.getEmployeeIds().get(0), both, feederId), Sets.newHashSet(plan.get(2).getEmployeeIds()));
+            Assertions.assertTrue(plan.get(0).isFilled() && plan.get(1).isFilled() && plan.get(2).isFilled());
+            Assertions.assertTrue(plan.get(3).getEmployeeIds().isEmpty());
+            Assertions.assertFalse(plan.get(3).isFilled());
+
+            //an occurrence of a recurring schedule takes its employee out of the plan of that date
+            Assertions.assertEquals(Sets.newHashSet(booked.getEmployeeIds().get(0), both), Sets.newHashSet(plan.get(4).getEmployeeIds()));
+
+            //an employee is only planned once saved for good
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            EmployeeDTO lateFeeder = createEmployeeDTO();
+            lateFeeder.setSkills(Sets.newHashSet(EmployeeSkill.FEEDING));
+            lateFeeder.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY));
+            transaction.execute(status -> {
+                long rolledBack = userController.saveEmployee(lateFeeder).getId();
+                status.setRollbackOnly();
+                return rolledBack;
+            });
+            long lateFeederId = transaction.execute(status -> {
+                long id = userController.saveEmployee(lateFeeder).getId();
+                employeeIds.add(id);
+                Assertions.assertFalse(userController.planAvailability(Lists.newArrayList(createEmployeeDemandDTO(nextMonday, EmployeeSkill.FEEDING, 5)))
+                        .get(0).getEmployeeIds().contains(id));
+                return id;
+            });
+            Assertions.assertEquals(Sets.newHashSet(booked.getEmployeeIds().get(0), both, feederId, lateFeederId),
+                    Sets.newHashSet(userController.planAvailability(Lists.newArrayList(createEmployeeDemandDTO(nextMonday, EmployeeSkill.FEEDING, 5)))
+                            .get(0).getEmployeeIds()));
+        } finally {
+            TransactionTemplate cleanup = new TransactionTemplate(transactionManager);
+            cleanup.execute(status -> {
+                List<Long> scheduleIds = Lists.newArrayList(booked.getId());
+                deleteWhereIn("delete from customer_schedule where schedule_id in :ids", scheduleIds);
+                deleteWhereIn("delete from employee_slot where schedule_id in :ids", scheduleIds);
+                deleteWhereIn("delete from schedule_employees where schedule_id in :ids", scheduleIds);
+                deleteWhereIn("delete from schedule_pets where schedule_id in :ids", scheduleIds);
+                deleteWhereIn("delete from schedule where id in :ids", scheduleIds);
+                deleteWhereIn("delete from recurring_schedule_employees where recurring_schedule_id in :ids", recurringScheduleIds);
+                deleteWhereIn("delete from recurring_schedule_pets where recurring_schedule_id in :ids", recurringScheduleIds);
+                deleteWhereIn("delete from recurring_schedule_skipped_dates where recurring_schedule_id in :ids", recurringScheduleIds);
+                deleteWhereIn("delete from recurring_schedule where id in :ids", recurringScheduleIds);
+                Long customerId = entityManager.find(Pet.class, booked.getPetIds().get(0)).getCustomer().getId();
+                deleteWhereIn("delete from pet where id in :ids", booked.getPetIds());
+                deleteWhereIn("delete from customer where id in :ids", Lists.newArrayList(customerId));
+                return deleteWhereIn("delete from employee where id in :ids", employeeIds);
+            });
+            employeeService.loadAvailabilityIndex();
+        }
+    }
+
+    @Test
+    public void testAvailabilityIndexOnlyTakesIntIds() {
+        Employee employee = new Employee();
+        employee.setId((long) Integer.MAX_VALUE + 1);
+        employee.setDaysAvailable(Sets.newHashSet(DayOfWeek.MONDAY));
+        EmployeeAvailabilityIndex index = new EmployeeAvailabilityIndex();
+        Assertions.assertThrows(ArithmeticException.class, () -> index.put(employee));
+        Assertions.assertTrue(index.findMatching(DayOfWeek.MONDAY, Collections.emptySet()).isEmpty());
+    }
+
+    @Test
+    public void testUnknownIdsFailFast() {
+        ScheduleDTO schedule = populateSchedule(3, 2, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.FEEDING));
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        entityManager.flush();
+        entityManager.clear();
+
+        //the employees and the pets of a schedule are each resolved with one query, and the recurring schedules of the
+        //employees are checked with a third
+        statistics.clear();
+        scheduleController.createSchedule(createScheduleDTO(schedule.getPetIds(), schedule.getEmployeeIds(), LocalDate.of(2019, 12, 26), Sets.newHashSet(EmployeeSkill.FEEDING)));
+        Assertions.assertEquals(3, statistics.getQueryExecutionCount());
+
+        EntityNotFoundException unknownPet = Assertions.assertThrows(EntityNotFoundException.class,
+                () -> scheduleController.createSchedule(createScheduleDTO(Lists.newArrayList(schedule.getPetIds().get(0), -1L), schedule.getEmployeeIds(), LocalDate.of(2019, 12, 27), Sets.newHashSet(EmployeeSkill.FEEDING))));
+        Assertions.assertEquals("Unknown pet ids: [-1]", unknownPet.getMessage());
+        Assertions.assertThrows(EntityNotFoundException.class, () -> scheduleController.getScheduleForPet(-1L));
+        Assertions.assertThrows(EntityNotFoundException.class, () -> scheduleController.getScheduleForEmployee(-1L));
+        Assertions.assertThrows(EntityNotFoundException.class, () -> petController.getPet(-1L));
+        Assertions.assertThrows(EntityNotFoundException.class, () -> userController.getOwnerByPet(-1L));
+
+        Map<String, String> body = new EntityNotFoundAdvice().handleEntityNotFound(unknownPet);
+        Assertions.assertEquals("Unknown pet ids: [-1]", body.get("message"));
+    }
+
+    @Test
+    public void testEmployeeCannotBeDoubleBooked() {
+        LocalDate date = LocalDate.of(2019, 12, 25);
+        ScheduleDTO booked = populateSchedule(1, 1, date, Sets.newHashSet(EmployeeSkill.FEEDING));
+        long employeeId = booked.getEmployeeIds().get(0);
+        long otherEmployeeId = userController.saveEmployee(createEmployeeDTO()).getId();
+
+        ScheduleConflictException conflict = Assertions.assertThrows(ScheduleConflictException.class,
+                () -> scheduleController.createSchedule(createScheduleDTO(booked.getPetIds(), Lists.newArrayList(otherEmployeeId, employeeId), date, Sets.newHashSet(EmployeeSkill.FEEDING))));
+        Assertions.assertEquals(conflict.getMessage(), new ConflictAdvice().handleConflict(conflict).get("message"));
+        Assertions.assertTrue(conflict.getMessage().contains("[" + employeeId + "]"));
+
+        //the rejected schedule did not claim the date of the other employee
+        ScheduleDTO other = scheduleController.createSchedule(createScheduleDTO(booked.getPetIds(), Lists.newArrayList(otherEmployeeId), date, Sets.newHashSet(EmployeeSkill.FEEDING)));
+        Assertions.assertEquals(Lists.newArrayList(otherEmployeeId), other.getEmployeeIds());
+        scheduleController.createSchedule(createScheduleDTO(booked.getPetIds(), Lists.newArrayList(employeeId), date.plusDays(1), Sets.newHashSet(EmployeeSkill.FEEDING)));
+
+        //a slot claimed by another instance, and so missing from the booking index, is rejected by the database
+        Schedule elsewhere = entityManager.find(Schedule.class, other.getId());
+        long thirdEmployeeId = userController.saveEmployee(createEmployeeDTO()).getId();
+        employeeSlotRepository.saveAndFlush(new EmployeeSlot(thirdEmployeeId, elsewhere));
+        Assertions.assertThrows(ScheduleConflictException.class,
+                () -> scheduleController.createSchedule(createScheduleDTO(booked.getPetIds(), Lists.newArrayList(thirdEmployeeId), date, Sets.newHashSet(EmployeeSkill.FEEDING))));
+    }
+
+    @Test
+    public void testReadOnlyTransactionsUseReplica() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        readWrite.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        //a read-only transaction skips flushing and snapshots, and borrows its connection from the replica pool only
+        double primary = connectionsAcquired("primary");
+        double replica = connectionsAcquired("replica");
+        readOnly.execute(status -> {
+            Session session = entityManager.unwrap(Session.class);
+            Assertions.assertEquals(FlushMode.MANUAL, session.getHibernateFlushMode());
+            Assertions.assertTrue(session.isDefaultReadOnly());
+            return petController.getPets();
+        });
+        Assertions.assertEquals(primary, connectionsAcquired("primary"));
+        Assertions.assertEquals(replica + 1, connectionsAcquired("replica"));
+
+        readWrite.execute(status -> userController.getAllCustomers());
+        Assertions.assertEquals(primary + 1, connectionsAcquired("primary"));
+        Assertions.assertEquals(replica + 1, connectionsAcquired("replica"));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testCacheAndETagReadsUsePrimary() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+
+        //a cache miss is read from the primary, so the cache is never filled from a lagging replica
+        double primary = connectionsAcquired("primary");
+        double replica = connectionsAcquired("replica");
+        Assertions.assertThrows(EntityNotFoundException.class, () -> userController.getEmployee(-1L));
+        Assertions.assertEquals(primary + 1, connectionsAcquired("primary"));
+        Assertions.assertEquals(replica, connectionsAcquired("replica"));
+
+        //so is a response sent with an ETag, its version included, and the pin is released with the request
+        TransactionTemplate committed = new TransactionTemplate(transactionManager);
+        long employeeId = committed.execute(status -> userController.saveEmployee(createEmployeeDTO()).getId());
+        try {
+            primary = connectionsAcquired("primary");
+            mockMvc.perform(get("/schedule/employee/{employeeId}", employeeId).param("from", "2019-12-01").param("to", "2019-12-31"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().exists("ETag"));
+            Assertions.assertEquals(primary + 2, connectionsAcquired("primary"));
+            Assertions.assertEquals(replica, connectionsAcquired("replica"));
+            petController.getPets();
+            Assertions.assertEquals(primary + 2, connectionsAcquired("primary"));
+            Assertions.assertEquals(replica + 1, connectionsAcquired("replica"));
+        } finally {
+            committed.execute(status -> deleteWhereIn("delete from employee where id in :ids", Lists.newArrayList(employeeId)));
+        }
+    }
+
+    @Test
+    public void testEveryControllerAndServiceIsGuardedByTheConcurrencyLimiter() throws ClassNotFoundException {
+        AspectJExpressionPointcut guarded = new AspectJExpressionPointcut();
+        guarded.setExpression(DatabaseConcurrencyLimiter.GUARDED);
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Service.class));
+        scanner.addIncludeFilter(new AnnotationTypeFilter(RestController.class));
+        Set<BeanDefinition> components = scanner.findCandidateComponents("com.udacity.jdnd.course3.critter.service");
+        Assertions.assertTrue(components.size() >= 5);
+        Set<BeanDefinition> controllers = scanner.findCandidateComponents("com.udacity.jdnd.course3.critter.controller");
+        Assertions.assertTrue(controllers.size() >= 5);
+        components.addAll(controllers);
+        for (BeanDefinition component : components) {
+            Class<?> type = Class.forName(component.getBeanClassName());
+            for (Method method : type.getDeclaredMethods()) {
+                if (Modifier.isPublic(method.getModifiers())) {
+                    Assertions.assertTrue(guarded.matches(method, type), type.getSimpleName() + "." + method.getName());
+                }
+            }
+        }
+
+        //the permit is taken before a transactional controller opens its transaction
+        Assertions.assertTrue(DatabaseConcurrencyLimiter.class.getAnnotation(Order.class).value()
+                < webApplicationContext.getBean(BeanFactoryTransactionAttributeSourceAdvisor.class).getOrder());
+
+        //the components the services use are only entered through them
+        Method resolve = ReflectionUtils.findMethod(EntityResolver.class, "employee", long.class);
+        Assertions.assertFalse(guarded.matches(resolve, EntityResolver.class));
+    }
+
+    @Test
+    public void testVirtualExecutionModeShedsLoadAndCapsDatabaseUse() throws Throwable {
+        //without virtual threads, requests finding the pool busy and its queue full are answered with 503
+        ExecutionConfig executionConfig = new ExecutionConfig();
+        ExecutorService executor = executionConfig.requestExecutor(1, 1);
+        LoadSheddingFilter filter = executionConfig.loadSheddingFilter(5);
+        CountDownLatch release = new CountDownLatch(1);
+        List<MockHttpServletResponse> responses = new CopyOnWriteArrayList<>();
+        Runnable request = () -> {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            try {
+                filter.doFilter(new MockHttpServletRequest(), response, (req, res) -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (IOException | ServletException e) {
+                throw new IllegalStateException(e);
+            }
+            responses.add(response);
+        };
+        try {
+            Assumptions.assumeTrue(executor instanceof ThreadPoolExecutor, "virtual threads are not queued");
+            executor.execute(request);
+            executor.execute(request);
+            executor.execute(request);
+            Assertions.assertEquals(1, responses.size());
+            Assertions.assertEquals(503, responses.get(0).getStatus());
+            Assertions.assertEquals("5", responses.get(0).getHeader("Retry-After"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(Lists.newArrayList(503, 200, 200), responses.stream().map(MockHttpServletResponse::getStatus).collect(Collectors.toList()));
+        Assertions.assertThrows(RejectedExecutionException.class, () -> executor.execute(request));
+
+        //however many callers there are, no more than the permits are inside the services at once
+        DatabaseConcurrencyLimiter limiter = executionConfig.databaseConcurrencyLimiter(2);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger mostInside = new AtomicInteger();
+        ProceedingJoinPoint joinPoint = Mockito.mock(ProceedingJoinPoint.class);
+        Mockito.when(joinPoint.proceed()).thenAnswer(invocation -> {
+            mostInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            return inside.decrementAndGet();
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<Object>> calls = IntStream.range(0, 12)
+                    .mapToObj(i -> callers.submit(() -> {
+                        try {
+                            return limiter.limit(joinPoint);
+                        } catch (Throwable e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }))
+                    .collect(Collectors.toList());
+            for (Future<Object> call : calls) {
+                call.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdown();
+        }
+        Assertions.assertEquals(2, mostInside.get());
+        Assertions.assertEquals(2, limiter.availablePermits());
+    }
+
+    @Test
+    public void testIdListsAreWrittenAsArrays() throws IOException {
+        ScheduleDTO schedule = populateSchedule(2, 3, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.FEEDING));
+
+        //ids are held in primitive arrays but still compare equal to ordinary lists
+        Assertions.assertTrue(schedule.getPetIds() instanceof LongIdList);
+        Assertions.assertEquals(Lists.newArrayList(schedule.getPetIds()), schedule.getPetIds());
+        Assertions.assertEquals(schedule.getPetIds(), Lists.newArrayList(schedule.getPetIds()));
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(schedule));
+        Assertions.assertEquals(schedule.getEmployeeIds(), objectMapper.convertValue(json.get("employeeIds"), new TypeReference<List<Long>>() {}));
+        Assertions.assertEquals(schedule.getPetIds(), objectMapper.convertValue(json.get("petIds"), new TypeReference<List<Long>>() {}));
+        Assertions.assertEquals("[]", objectMapper.writeValueAsString(LongIdList.of()));
+    }
+
+    @Test
+    public void testStreamAllSchedulesAsJsonArray() throws IOException {
+        ScheduleDTO first = populateSchedule(2, 3, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.WALKING));
+        ScheduleDTO second = populateSchedule(1, 1, LocalDate.of(2019, 12, 26), Sets.newHashSet(EmployeeSkill.PETTING));
+
+        //the schedules are read off one cursor and written as a single array, in id order
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        scheduleController.streamAllSchedules(response);
+        List<ScheduleDTO> streamed = objectMapper.readValue(response.getContentAsString(), new TypeReference<List<ScheduleDTO>>() {});
+        Assertions.assertEquals("application/json", response.getContentType());
+        Assertions.assertEquals(2, streamed.size());
+        Assertions.assertEquals(first.getId(), streamed.get(0).getId());
+        compareSchedules(first, streamed.get(0));
+        compareSchedules(second, streamed.get(1));
+
+        //the employee and pet ids are read chunk by chunk, with the same result whatever the chunk size
+        List<ScheduleDTO> chunked = Lists.newArrayList();
+        new ScheduleCursor(dataSource, sqlStatementCounter, 1).forEach(chunked::add);
+        Assertions.assertEquals(2, chunked.size());
+        compareSchedules(first, chunked.get(0));
+        compareSchedules(second, chunked.get(1));
+    }
+
+    @Test
+    public void testImportCustomersPetsAndEmployees() throws IOException {
+        //imports commit batch by batch on threads of their own, so their rows are deleted at the end
+        List<Long> customerIds = Lists.newArrayList();
+        List<Long> petIds = Lists.newArrayList();
+        List<Long> employeeIds = Lists.newArrayList();
+        try {
+            ImportReportDTO customers = importController.importCustomers(importRequest(ImportFormat.CSV_VALUE,
+                    "name,phoneNumber,notes\n" +
+                    "Ann,111,first\n" +
+                    ",222,no name\n" +
+                    "\n" +
+                    "Bob,333,\n"));
+            customerIds.addAll(customers.getIds());
+            Assertions.assertEquals(3, customers.getRowsRead());
+            Assertions.assertEquals(2, customers.getRowsImported());
+            Assertions.assertEquals(1, customers.getErrors().size());
+            Assertions.assertEquals(3, customers.getErrors().get(0).getLine());
+            Assertions.assertEquals("name is required", customers.getErrors().get(0).getMessage());
+
+            long ann = customerIds.get(0);
+            ImportReportDTO pets = importController.importPets(importRequest(ImportFormat.NDJSON_VALUE,
+                    "{\"name\":\"Rex\",\"type\":\"DOG\",\"ownerId\":" + ann + ",\"birthDate\":\"2018-02-03\"}\n" +
+                    "{\"name\":\"Tom\",\"type\":\"CAT\",\"ownerId\":" + Long.MAX_VALUE + "}\n" +
+                    "{\"name\":\"Bad\",\n" +
+                    "{\"name\":\"Kit\",\"type\":\"CAT\",\"ownerId\":" + ann + "}\n"));
+            petIds.addAll(pets.getIds());
+            Assertions.assertEquals(4, pets.getRowsRead());
+            Assertions.assertEquals(2, pets.getRowsImported());
+            Assertions.assertEquals(2, pets.getRowsRejected());
+            Assertions.assertEquals(Lists.newArrayList(2L, 3L), pets.getErrors().stream()
+                    .map(ImportReportDTO.RowError::getLine).collect(Collectors.toList()));
+            Assertions.assertEquals("Owner " + Long.MAX_VALUE + " does not exist", pets.getErrors().get(0).getMessage());
+
+            //the owner is linked to its new pets on both sides
+            Assertions.assertEquals(petIds, userController.getOwnerByPet(petIds.get(0)).getPetIds());
+            List<PetDTO> annsPets = petController.getPetsByOwner(ann);
+            Assertions.assertEquals(LocalDate.of(2018, 2, 3), annsPets.get(0).getBirthDate());
+            Assertions.assertEquals("Kit", annsPets.get(1).getName());
+
+            //employees import without days available, so they never turn up in availability searches
+            ImportReportDTO employees = importController.importEmployees(importRequest(ImportFormat.CSV_VALUE,
+                    "name,skills\n" +
+                    "Eve,FEEDING;PETTING\n"));
+            employeeIds.addAll(employees.getIds());
+            Assertions.assertEquals(Sets.newHashSet(EmployeeSkill.FEEDING, EmployeeSkill.PETTING),
+                    userController.getEmployee(employeeIds.get(0)).getSkills());
+            Assertions.assertTrue(meterRegistry.get("critter.import.rows").tag("entity", "pet")
+                    .tag("outcome", "rejected").counter().count() >= 2);
+        } finally {
+            TransactionTemplate cleanup = new TransactionTemplate(transactionManager);
+            cleanup.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            cleanup.execute(status -> {
+                deleteWhereIn("delete from pet where id in :ids", petIds);
+                deleteWhereIn("delete from customer where id in :ids", customerIds);
+                return deleteWhereIn("delete from employee where id in :ids", employeeIds);
+            });
+        }
+    }
+
+    @Test
+    public void testCommittedChangesAreStreamedAsEvents() {
+        long head = eventController.getHead();
+        DeferredResult<ChangeEventsDTO> poll = eventController.getEvents(head, 10, 5);
+        Assertions.assertFalse(poll.hasResult());
+
+        //a change is only published once its transaction commits
+        userController.saveCustomer(createCustomerDTO());
+        Assertions.assertFalse(poll.hasResult());
+
+        TransactionTemplate committed = new TransactionTemplate(transactionManager);
+        committed.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        long customerId = committed.execute(status -> userController.saveCustomer(createCustomerDTO()).getId());
+        try {
+            Assertions.assertTrue(poll.hasResult());
+            ChangeEventsDTO events = (ChangeEventsDTO) poll.getResult();
+            Assertions.assertFalse(events.isMissed());
+            Assertions.assertEquals(1, events.getEvents().size());
+            ChangeEventDTO event = events.getEvents().get(0);
+            Assertions.assertEquals(head, event.getOffset());
+            Assertions.assertEquals(ChangeEventDTO.Entity.CUSTOMER, event.getEntity());
+            Assertions.assertEquals(ChangeEventDTO.Action.CREATED, event.getAction());
+            Assertions.assertEquals(customerId, event.getId());
+            Assertions.assertEquals(head + 1, events.getNext());
+
+            //nothing new to read, and an offset from before the events held is reported as missed
+            Assertions.assertTrue(((ChangeEventsDTO) eventController.getEvents(head + 1, 10, 0).getResult()).getEvents().isEmpty());
+            Assertions.assertTrue(((ChangeEventsDTO) eventController.getEvents(1, 10, 0).getResult()).isMissed());
+
+            //0 reads from the oldest event held, which is not reported as missed
+            ChangeEventsDTO fromStart = (ChangeEventsDTO) eventController.getEvents(0, 10, 0).getResult();
+            Assertions.assertFalse(fromStart.isMissed());
+            Assertions.assertTrue(fromStart.getEvents().get(0).getOffset() <= head);
+        } finally {
+            committed.execute(status -> deleteWhereIn("delete from customer where id in :ids", Lists.newArrayList(customerId)));
+        }
+    }
+
+    @Test
+    public void testConditionalGetsAreAnsweredFromVersions() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        TransactionTemplate committed = new TransactionTemplate(transactionManager);
+        committed.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        long customerId = committed.execute(status -> userController.saveCustomer(createCustomerDTO()).getId());
+        List<Long> petIds = Lists.newArrayList();
+        try {
+            PetDTO petDTO = createPetDTO();
+            petDTO.setOwnerId(customerId);
+            petIds.add(committed.execute(status -> petController.savePet(petDTO).getId()));
+
+            String eTag = mockMvc.perform(get("/pet/owner/{ownerId}", customerId))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader("ETag");
+            Assertions.assertNotNull(eTag);
+            mockMvc.perform(get("/user/customer/pet/{petId}", petIds.get(0)))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("ETag", eTag));
+
+            //an unchanged customer is answered from its version alone
+            Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            mockMvc.perform(get("/pet/owner/{ownerId}", customerId).header("If-None-Match", eTag))
+                    .andExpect(status().isNotModified());
+            mockMvc.perform(get("/schedule/customer/{customerId}", customerId).header("If-None-Match", eTag))
+                    .andExpect(status().isNotModified());
+            Assertions.assertEquals(2, statistics.getPrepareStatementCount());
+            mockMvc.perform(get("/user/customer/pet/{petId}", petIds.get(0)).header("If-None-Match", eTag))
+                    .andExpect(status().isNotModified());
+
+            //a change only bumps the version once it commits
+            ExecutorService reader = Executors.newSingleThreadExecutor();
+            try {
+                committed.execute(status -> {
+                    PetDTO uncommitted = createPetDTO();
+                    uncommitted.setOwnerId(customerId);
+                    petController.savePet(uncommitted);
+                    try {
+                        reader.submit(() -> mockMvc.perform(get("/pet/owner/{ownerId}", customerId).header("If-None-Match", eTag))
+                                .andExpect(status().isNotModified())).get(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    status.setRollbackOnly();
+                    return null;
+                });
+            } finally {
+                reader.shutdown();
+            }
+            mockMvc.perform(get("/pet/owner/{ownerId}", customerId).header("If-None-Match", eTag))
+                    .andExpect(status().isNotModified());
+
+            PetDTO secondPetDTO = createPetDTO();
+            secondPetDTO.setOwnerId(customerId);
+            petIds.add(committed.execute(status -> petController.savePet(secondPetDTO).getId()));
+            String newETag = mockMvc.perform(get("/pet/owner/{ownerId}", customerId).header("If-None-Match", eTag))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader("ETag");
+            Assertions.assertNotEquals(eTag, newETag);
+            mockMvc.perform(get("/user/customer/pet/{petId}", petIds.get(0)).header("If-None-Match", eTag))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("ETag", newETag));
+
+            //the version is persisted, so another instance sharing the database hands out the same ETag
+            AggregateVersions otherInstance = new AggregateVersions(customerRepository, employeeRepository, 600);
+            Assertions.assertEquals(newETag, otherInstance.customerETag(customerId));
+            Assertions.assertNull(otherInstance.customerETag(-1L));
+        } finally {
+            committed.execute(status -> {
+                deleteWhereIn("delete from pet where id in :ids", petIds);
+                return deleteWhereIn("delete from customer where id in :ids", Lists.newArrayList(customerId));
+            });
+        }
+    }
+
+    @Test
+    public void testUpdatingAPetOntoAnotherOwnerBumpsBothOwners() {
+        TransactionTemplate committed = new TransactionTemplate(transactionManager);
+        committed.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        List<Long> customerIds = committed.execute(status -> Lists.newArrayList(
+                userController.saveCustomer(createCustomerDTO()).getId(),
+                userController.saveCustomer(createCustomerDTO()).getId()));
+        List<Long> petIds = Lists.newArrayList();
+        try {
+            PetDTO petDTO = createPetDTO();
+            petDTO.setOwnerId(customerIds.get(0));
+            petIds.add(committed.execute(status -> petController.savePet(petDTO).getId()));
+            String firstOwnerETag = aggregateVersions.customerETag(customerIds.get(0));
+            String secondOwnerETag = aggregateVersions.customerETag(customerIds.get(1));
+
+            committed.execute(status -> {
+                Pet pet = new Pet();
+                pet.setId(petIds.get(0));
+                pet.setType(petDTO.getType());
+                pet.setName(petDTO.getName());
+                return petsService.savePet(pet, customerIds.get(1));
+            });
+            Assertions.assertNotEquals(firstOwnerETag, aggregateVersions.customerETag(customerIds.get(0)));
+            Assertions.assertNotEquals(secondOwnerETag, aggregateVersions.customerETag(customerIds.get(1)));
+            Assertions.assertTrue(petController.getPetsByOwner(customerIds.get(0)).isEmpty());
+            Assertions.assertEquals(petIds, petController.getPetsByOwner(customerIds.get(1)).stream()
+                    .map(PetDTO::getId).collect(Collectors.toList()));
+        } finally {
+            committed.execute(status -> {
+                deleteWhereIn("delete from pet where id in :ids", petIds);
+                return deleteWhereIn("delete from customer where id in :ids", customerIds);
+            });
+        }
+    }
+
+    @Test
+    public void testHotPathMetricsAreRecorded() throws IOException {
+        ScheduleDTO schedule = populateSchedule(1, 2, LocalDate.of(2019, 12, 25), Sets.newHashSet(EmployeeSkill.FEEDING));
+        Long ownerId = userController.getOwnerByPet(schedule.getPetIds().get(0)).getId();
+        long controllerCalls = meterRegistry.timer("critter.controller", "class", "ScheduleController",
+                "method", "getScheduleForCustomer", "exception", "none").count();
+        long serviceCalls = meterRegistry.timer("critter.service", "class", "SchedulesService",
+                "method", "getAllScheduleForCustomer", "exception", "none").count();
+        long sqlSamples = meterRegistry.summary("critter.controller.sql", "class", "ScheduleController",
+                "method", "getScheduleForCustomer").count();
+        double rows = meterRegistry.summary("critter.controller.rows", "class", "ScheduleController",
+                "method", "getScheduleForCustomer").totalAmount();
+
+        scheduleController.getScheduleForCustomer(ownerId);
+
+        Assertions.assertEquals(controllerCalls + 1, meterRegistry.get("critter.controller")
+                .tag("method", "getScheduleForCustomer").timer().count());
+        Assertions.assertEquals(serviceCalls + 1, meterRegistry.get("critter.service")
+                .tag("method", "getAllScheduleForCustomer").timer().count());
+        Assertions.assertEquals(sqlSamples + 1, meterRegistry.get("critter.controller.sql")
+                .tag("method", "getScheduleForCustomer").summary().count());
+        Assertions.assertTrue(meterRegistry.get("critter.controller.sql")
+                .tag("method", "getScheduleForCustomer").summary().max() >= 1);
+        Assertions.assertEquals(rows + 1, meterRegistry.get("critter.controller.rows")
+                .tag("method", "getScheduleForCustomer").summary().totalAmount());
+
+        //a failing request is timed under its exception, and its statements are still counted
+        long failedCalls = meterRegistry.timer("critter.controller", "class", "ScheduleController",
+                "method", "getScheduleForPet", "exception", "EntityNotFoundException").count();
+        long failedSqlSamples = meterRegistry.summary("critter.controller.sql", "class", "ScheduleController",
+                "method", "getScheduleForPet").count();
+        Assertions.assertThrows(EntityNotFoundException.class, () -> scheduleController.getScheduleForPet(-1L));
+        Assertions.assertEquals(failedCalls + 1, meterRegistry.get("critter.controller").tag("method", "getScheduleForPet")
+                .tag("exception", "EntityNotFoundException").timer().count());
+        Assertions.assertEquals(failedSqlSamples + 1, meterRegistry.get("critter.controller.sql")
+                .tag("method", "getScheduleForPet").summary().count());
+        Assertions.assertTrue(meterRegistry.get("critter.controller.sql")
+                .tag("method", "getScheduleForPet").summary().max() >= 1);
+
+        //a streamed response records the items it wrote, and the statements of its JDBC cursor
+        double streamedRows = meterRegistry.summary("critter.controller.rows", "class", "ScheduleController",
+                "method", "streamAllSchedules").totalAmount();
+        entityManager.flush();
+        long statementsBefore = sqlStatementCounter.current();
+        int streamed = getAllSchedules().size();
+        Assertions.assertEquals(streamedRows + streamed, meterRegistry.get("critter.controller.rows")
+                .tag("method", "streamAllSchedules").summary().totalAmount());
+        //the schedules, then the employee and the pet ids of their one chunk
+        Assertions.assertEquals(3, sqlStatementCounter.current() - statementsBefore);
+    }
 
     private static EmployeeDTO createEmployeeDTO() {
         EmployeeDTO employeeDTO = new EmployeeDTO();
@@ -262,6 +1495,14 @@ public class CritterFunctionalTest {
         return petDTO;
     }
 
+    private static EmployeeDemandDTO createEmployeeDemandDTO(LocalDate date, EmployeeSkill skill, int headcount) {
+        EmployeeDemandDTO employeeDemandDTO = new EmployeeDemandDTO();
+        employeeDemandDTO.setDate(date);
+        employeeDemandDTO.setSkills(Sets.newHashSet(skill));
+        employeeDemandDTO.setHeadcount(headcount);
+        return employeeDemandDTO;
+    }
+
     private static EmployeeRequestDTO createEmployeeRequestDTO() {
         EmployeeRequestDTO employeeRequestDTO = new EmployeeRequestDTO();
         employeeRequestDTO.setDate(LocalDate.of(2019, 12, 25));
@@ -278,6 +1519,18 @@ public class CritterFunctionalTest {
         return scheduleDTO;
     }
 
+    private static RecurringScheduleDTO createRecurringScheduleDTO(long employeeId, long petId, LocalDate startDate,
+                                                                   Set<DayOfWeek> daysOfWeek, int intervalWeeks) {
+        RecurringScheduleDTO recurringScheduleDTO = new RecurringScheduleDTO();
+        recurringScheduleDTO.setEmployeeIds(Lists.newArrayList(employeeId));
+        recurringScheduleDTO.setPetIds(Lists.newArrayList(petId));
+        recurringScheduleDTO.setActivities(Sets.newHashSet(EmployeeSkill.WALKING));
+        recurringScheduleDTO.setStartDate(startDate);
+        recurringScheduleDTO.setDaysOfWeek(daysOfWeek);
+        recurringScheduleDTO.setIntervalWeeks(intervalWeeks);
+        return recurringScheduleDTO;
+    }
+
     private ScheduleDTO populateSchedule(int numEmployees, int numPets, LocalDate date, Set<EmployeeSkill> activities) {
         List<Long> employeeIds = IntStream.range(0, numEmployees)
                 .mapToObj(i -> createEmployeeDTO())
@@ -296,6 +1549,29 @@ public class CritterFunctionalTest {
         return scheduleController.createSchedule(createScheduleDTO(petIds, employeeIds, date, activities));
     }
 
+    private List<ScheduleDTO> getAllSchedules() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        scheduleController.streamAllSchedules(response);
+        return objectMapper.readValue(response.getContentAsString(), new TypeReference<List<ScheduleDTO>>() {});
+    }
+
+    private static MockHttpServletRequest importRequest(String contentType, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/import");
+        request.setContentType(contentType);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private int deleteWhereIn(String sql, List<Long> ids) {
+        return ids.isEmpty() ? 0 : entityManager.createNativeQuery(sql).setParameter("ids", ids).executeUpdate();
+    }
+
+    private double connectionsAcquired(String pool) {
+        //a pool only registers its meters once it has started
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", pool).timer();
+        return acquire == null ? 0 : acquire.count();
+    }
+
     private static void compareSchedules(ScheduleDTO sched1, ScheduleDTO sched2) {
         Assertions.assertEquals(sched1.getPetIds(), sched2.getPetIds());
         Assertions.assertEquals(sched1.getActivities(), sched2.getActivities());
@@ -0,0 +1,56 @@
+package com.udacity.jdnd.course3.critter.benchmark;
+
+import com.udacity.jdnd.course3.critter.CritterApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts the application for a benchmark against a private in-memory H2 database, with or without the web server.
+ */
+public final class BenchmarkContext {
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Starts the application without the web server.
+     * @param properties extra properties in {@code key=value} form, overriding the defaults
+     * @return the running application context
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        return start(WebApplicationType.NONE, properties);
+    }
+
+    /**
+     * Starts the application with the web server listening on a random free port, which is then available as
+     * the {@code local.server.port} property.
+     * @param properties extra properties in {@code key=value} form, overriding the defaults
+     * @return the running application context
+     */
+    public static ConfigurableApplicationContext startServer(String... properties) {
+        List<String> all = new ArrayList<>(Arrays.asList(properties));
+        all.add(0, "server.port=0");
+        return start(WebApplicationType.SERVLET, all.toArray(new String[0]));
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType type, String... properties) {
+        List<String> all = new ArrayList<>(Arrays.asList(
+                "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                "spring.datasource.driverClassName=org.h2.Driver",
+                "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "spring.jpa.hibernate.ddl-auto=create",
+                "spring.jpa.show-sql=false",
+                "spring.main.banner-mode=off",
+                "logging.level.root=WARN"));
+        all.addAll(Arrays.asList(properties));
+        //passed as command line arguments so that they take precedence over application.properties
+        String[] args = all.stream().map(property -> "--" + property).toArray(String[]::new);
+        return new SpringApplicationBuilder(CritterApplication.class)
+                .web(type)
+                .run(args);
+    }
+}
@@ -0,0 +1,165 @@
+package com.udacity.jdnd.course3.critter.benchmark;
+
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import com.udacity.jdnd.course3.critter.service.EmployeeService;
+import com.udacity.jdnd.course3.critter.service.SchedulesService;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A generated dataset of customers, pets, employees and schedules, saved through the application's own services
+ * and repositories so that every in-memory index is populated as well.
+ *
+ * For every 20 schedules there is one employee and one customer with two pets. Each schedule has one employee and
+ * one pet, one or two activities, and a date within {@link #DAYS} days of {@link #FIRST_DATE}. No employee is booked
+ * twice on the same date, as the application would reject it.
+ */
+public final class BenchmarkDataset {
+    /**
+     * Date of the earliest schedule
+     */
+    public static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+
+    /**
+     * Number of days the schedules are spread over
+     */
+    public static final int DAYS = 365;
+
+    private static final int SCHEDULES_PER_OWNER = 20;
+    private static final int CHUNK_SIZE = 1000;
+    private static final EmployeeSkill[] SKILLS = EmployeeSkill.values();
+    private static final DayOfWeek[] WEEK = DayOfWeek.values();
+
+    private final long[] customerIds;
+    private final long[] petIds;
+    private final long[] employeeIds;
+
+    private BenchmarkDataset(long[] customerIds, long[] petIds, long[] employeeIds) {
+        this.customerIds = customerIds;
+        this.petIds = petIds;
+        this.employeeIds = employeeIds;
+    }
+
+    /**
+     * Generates and saves a dataset. The same size always produces the same data.
+     * @param context the running application
+     * @param schedules the number of schedules to create
+     * @return the ids of the saved entities
+     */
+    public static BenchmarkDataset seed(ApplicationContext context, int schedules) {
+        Random random = new Random(schedules);
+        int owners = Math.max(10, schedules / SCHEDULES_PER_OWNER);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        CustomerRepository customerRepository = context.getBean(CustomerRepository.class);
+        PetRepository petRepository = context.getBean(PetRepository.class);
+        EmployeeService employeeService = context.getBean(EmployeeService.class);
+        SchedulesService schedulesService = context.getBean(SchedulesService.class);
+
+        long[] employeeIds = new long[owners];
+        for (int i = 0; i < owners; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employee.setSkills(randomSubset(random, SKILLS, EmployeeSkill.class));
+            employee.setDaysAvailable(randomSubset(random, WEEK, DayOfWeek.class));
+            employeeIds[i] = employeeService.saveEmployee(employee).getId();
+        }
+
+        long[] customerIds = new long[owners];
+        long[] petIds = new long[owners * 2];
+        for (int start = 0; start < owners; start += CHUNK_SIZE) {
+            int from = start;
+            int to = Math.min(owners, start + CHUNK_SIZE);
+            transactionTemplate.execute(status -> {
+                List<Customer> customers = new ArrayList<>(to - from);
+                List<Pet> pets = new ArrayList<>((to - from) * 2);
+                for (int i = from; i < to; i++) {
+                    Customer customer = new Customer();
+                    customer.setName("Customer " + i);
+                    customer.setPhoneNumber("123-456-789");
+                    customers.add(customer);
+                    for (int j = 0; j < 2; j++) {
+                        Pet pet = new Pet();
+                        pet.setName("Pet " + i + "-" + j);
+                        pet.setType(PetType.values()[random.nextInt(PetType.values().length)]);
+                        customer.addPet(pet);
+                        pets.add(pet);
+                    }
+                }
+                customerRepository.saveAll(customers);
+                petRepository.saveAll(pets);
+                for (int i = from; i < to; i++) {
+                    customerIds[i] = customers.get(i - from).getId();
+                    petIds[i * 2] = pets.get((i - from) * 2).getId();
+                    petIds[i * 2 + 1] = pets.get((i - from) * 2 + 1).getId();
+                }
+                return null;
+            });
+        }
+
+        BitSet booked = new BitSet(employeeIds.length * DAYS);
+        for (int start = 0; start < schedules; start += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, schedules - start);
+            List<Schedule> chunk = new ArrayList<>(count);
+            List<List<Long>> scheduleEmployeeIds = new ArrayList<>(count);
+            List<List<Long>> schedulePetIds = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int day;
+                int employee;
+                do {
+                    day = random.nextInt(DAYS);
+                    employee = random.nextInt(employeeIds.length);
+                } while (booked.get(employee * DAYS + day));
+                booked.set(employee * DAYS + day);
+
+                Schedule schedule = new Schedule();
+                schedule.setDate(FIRST_DATE.plusDays(day));
+                Set<EmployeeSkill> activities = EnumSet.of(SKILLS[random.nextInt(SKILLS.length)], SKILLS[random.nextInt(SKILLS.length)]);
+                schedule.setActivities(activities);
+                chunk.add(schedule);
+                scheduleEmployeeIds.add(Collections.singletonList(employeeIds[employee]));
+                schedulePetIds.add(Collections.singletonList(petIds[random.nextInt(petIds.length)]));
+            }
+            schedulesService.saveSchedules(chunk, scheduleEmployeeIds, schedulePetIds);
+        }
+        return new BenchmarkDataset(customerIds, petIds, employeeIds);
+    }
+
+    private static <E extends Enum<E>> Set<E> randomSubset(Random random, E[] values, Class<E> type) {
+        Set<E> subset = EnumSet.noneOf(type);
+        for (E value : values) {
+            if (random.nextBoolean()) {
+                subset.add(value);
+            }
+        }
+        return subset;
+    }
+
+    public long[] getCustomerIds() {
+        return customerIds;
+    }
+
+    public long[] getPetIds() {
+        return petIds;
+    }
+
+    public long[] getEmployeeIds() {
+        return employeeIds;
+    }
+}
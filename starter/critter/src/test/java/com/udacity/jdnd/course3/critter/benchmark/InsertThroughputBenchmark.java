@@ -0,0 +1,88 @@
+package com.udacity.jdnd.course3.critter.benchmark;
+
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.pet.PetType;
+import com.udacity.jdnd.course3.critter.repository.CustomerRepository;
+import com.udacity.jdnd.course3.critter.repository.PetRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast customers and their pets can be onboarded in bulk. A batch size of 1 sends one INSERT per
+ * entity, which is what the identity ids used to force; larger batch sizes group the inserts into JDBC batches.
+ *
+ * Run with {@code mvn -Pbenchmark test -Dbenchmark.include=InsertThroughputBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class InsertThroughputBenchmark {
+    /**
+     * Customers inserted per transaction, each with two pets
+     */
+    private static final int CUSTOMERS = 500;
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private CustomerRepository customerRepository;
+    private PetRepository petRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start("critter.jdbc.batch-size=" + batchSize);
+        customerRepository = context.getBean(CustomerRepository.class);
+        petRepository = context.getBean(PetRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        petRepository.deleteAllInBatch();
+        customerRepository.deleteAllInBatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * Inserts {@value #CUSTOMERS} customers and two pets for each in one transaction.
+     * @return the number of pets saved
+     */
+    @Benchmark
+    @OperationsPerInvocation(CUSTOMERS)
+    public int onboardCustomers() {
+        return transactionTemplate.execute(status -> {
+            List<Customer> customers = new ArrayList<>(CUSTOMERS);
+            List<Pet> pets = new ArrayList<>(CUSTOMERS * 2);
+            for (int i = 0; i < CUSTOMERS; i++) {
+                Customer customer = new Customer();
+                customer.setName("Customer " + i);
+                customer.setPhoneNumber("123-456-789");
+                customers.add(customer);
+                for (int j = 0; j < 2; j++) {
+                    Pet pet = new Pet();
+                    pet.setName("Pet " + i + "-" + j);
+                    pet.setType(PetType.DOG);
+                    pet.setCustomer(customer);
+                    pets.add(pet);
+                }
+            }
+            customerRepository.saveAll(customers);
+            return petRepository.saveAll(pets).size();
+        });
+    }
+}
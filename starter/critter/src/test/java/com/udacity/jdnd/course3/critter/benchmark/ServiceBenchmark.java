@@ -0,0 +1,66 @@
+package com.udacity.jdnd.course3.critter.benchmark;
+
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.service.EmployeeService;
+import com.udacity.jdnd.course3.critter.service.SchedulesService;
+import com.udacity.jdnd.course3.critter.user.EmployeeSkill;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the service calls behind the busiest lookups against a seeded H2 database. The dataset size is the
+ * number of schedules; narrow it with {@code -Dbenchmark.options="-p schedules=1000"}.
+ *
+ * Run with {@code mvn -Pbenchmark test -Dbenchmark.include=ServiceBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ServiceBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int schedules;
+
+    private ConfigurableApplicationContext context;
+    private BenchmarkDataset dataset;
+    private EmployeeService employeeService;
+    private SchedulesService schedulesService;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start();
+        dataset = BenchmarkDataset.seed(context, schedules);
+        employeeService = context.getBean(EmployeeService.class);
+        schedulesService = context.getBean(SchedulesService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Employee> getEmployeesForService() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate date = BenchmarkDataset.FIRST_DATE.plusDays(random.nextInt(BenchmarkDataset.DAYS));
+        EmployeeSkill[] skills = EmployeeSkill.values();
+        Set<EmployeeSkill> required = EnumSet.of(skills[random.nextInt(skills.length)]);
+        return employeeService.getEmployeesForService(date, required);
+    }
+
+    @Benchmark
+    public List<Schedule> getAllScheduleForCustomer() {
+        long[] customerIds = dataset.getCustomerIds();
+        return schedulesService.getAllScheduleForCustomer(customerIds[ThreadLocalRandom.current().nextInt(customerIds.length)]);
+    }
+}
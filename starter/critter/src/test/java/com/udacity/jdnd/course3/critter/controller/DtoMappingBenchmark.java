@@ -0,0 +1,172 @@
+package com.udacity.jdnd.course3.critter.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.udacity.jdnd.course3.critter.benchmark.BenchmarkContext;
+import com.udacity.jdnd.course3.critter.benchmark.BenchmarkDataset;
+import com.udacity.jdnd.course3.critter.entity.Customer;
+import com.udacity.jdnd.course3.critter.entity.Employee;
+import com.udacity.jdnd.course3.critter.entity.Pet;
+import com.udacity.jdnd.course3.critter.entity.Schedule;
+import com.udacity.jdnd.course3.critter.repository.EmployeeRepository;
+import com.udacity.jdnd.course3.critter.schedule.ScheduleDTO;
+import com.udacity.jdnd.course3.critter.service.CustomerService;
+import com.udacity.jdnd.course3.critter.service.PetsService;
+import com.udacity.jdnd.course3.critter.service.SchedulesService;
+import com.udacity.jdnd.course3.critter.user.CustomerDTO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the entity to DTO converters of the controllers on their own, without the database. A page of each
+ * entity type is loaded once with every collection initialized, and each benchmark converts the whole page.
+ * Add {@code -prof gc} to the options to see the allocation rate.
+ *
+ * The {@code boxed*} benchmarks repeat the conversion of ids through streams into lists of {@code Long}, as the
+ * controllers did before {@link DtoMapper}, and the {@code *Json} benchmarks also write the converted page as JSON,
+ * to compare the allocation per page of both.
+ *
+ * Run with {@code mvn -Pbenchmark test -Dbenchmark.include=DtoMappingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DtoMappingBenchmark {
+    /**
+     * Number of entities of each type converted per invocation
+     */
+    private static final int PAGE = 1000;
+
+    private ConfigurableApplicationContext context;
+    private DtoMapper dtoMapper;
+    private ObjectWriter writer;
+    private List<Pet> pets;
+    private List<Customer> customers;
+    private List<Employee> employees;
+    private List<Schedule> schedules;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start();
+        BenchmarkDataset dataset = BenchmarkDataset.seed(context, PAGE * 20);
+        dtoMapper = context.getBean(DtoMapper.class);
+        writer = context.getBean(ObjectMapper.class).writer();
+        pets = context.getBean(PetsService.class).getPetsAfter(0, PAGE);
+        customers = context.getBean(CustomerService.class).getCustomersAfter(0, PAGE);
+        schedules = context.getBean(SchedulesService.class).getSchedulesAfter(0, PAGE);
+        employees = context.getBean(EmployeeRepository.class).getByIdIn(Arrays.stream(dataset.getEmployeeIds())
+                .limit(PAGE)
+                .boxed()
+                .collect(Collectors.toList()));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public void petDTOs(Blackhole blackhole) {
+        for (Pet pet : pets) {
+            blackhole.consume(dtoMapper.toPetDTO(pet));
+        }
+    }
+
+    @Benchmark
+    public void customerDTOs(Blackhole blackhole) {
+        for (Customer customer : customers) {
+            blackhole.consume(dtoMapper.toCustomerDTO(customer));
+        }
+    }
+
+    @Benchmark
+    public void employeeDTOs(Blackhole blackhole) {
+        for (Employee employee : employees) {
+            blackhole.consume(dtoMapper.toEmployeeDTO(employee));
+        }
+    }
+
+    @Benchmark
+    public void scheduleDTOs(Blackhole blackhole) {
+        for (Schedule schedule : schedules) {
+            blackhole.consume(dtoMapper.toScheduleDTO(schedule));
+        }
+    }
+
+    @Benchmark
+    public void boxedCustomerDTOs(Blackhole blackhole) {
+        for (Customer customer : customers) {
+            blackhole.consume(boxedCustomerDTO(customer));
+        }
+    }
+
+    @Benchmark
+    public void boxedScheduleDTOs(Blackhole blackhole) {
+        for (Schedule schedule : schedules) {
+            blackhole.consume(boxedScheduleDTO(schedule));
+        }
+    }
+
+    @Benchmark
+    public void scheduleJson(Blackhole blackhole) throws IOException {
+        writer.writeValue(new BlackholeOutputStream(blackhole), dtoMapper.toScheduleDTOs(schedules));
+    }
+
+    @Benchmark
+    public void boxedScheduleJson(Blackhole blackhole) throws IOException {
+        List<ScheduleDTO> scheduleDTOs = schedules.stream().map(DtoMappingBenchmark::boxedScheduleDTO).collect(Collectors.toList());
+        writer.writeValue(new BlackholeOutputStream(blackhole), scheduleDTOs);
+    }
+
+    private static CustomerDTO boxedCustomerDTO(Customer customer) {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setId(customer.getId());
+        customerDTO.setName(customer.getName());
+        customerDTO.setNotes(customer.getNotes());
+        customerDTO.setPhoneNumber(customer.getPhoneNumber());
+        customerDTO.setPetIds(customer.getPets().stream().map(Pet::getId).collect(Collectors.toList()));
+        return customerDTO;
+    }
+
+    private static ScheduleDTO boxedScheduleDTO(Schedule schedule) {
+        ScheduleDTO scheduleDTO = new ScheduleDTO();
+        scheduleDTO.setActivities(schedule.getActivities());
+        scheduleDTO.setDate(schedule.getDate());
+        scheduleDTO.setId(schedule.getId());
+        scheduleDTO.setEmployeeIds(schedule.getEmployees().stream().map(Employee::getId).collect(Collectors.toList()));
+        scheduleDTO.setPetIds(schedule.getPets().stream().map(Pet::getId).collect(Collectors.toList()));
+        return scheduleDTO;
+    }
+
+    /**
+     * Discards the JSON written, handing each byte to the blackhole so that writing it is not optimized away.
+     */
+    private static final class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        private BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.udacity.jdnd.course3.critter.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and response statuses of one operation, recorded by many clients at once. Latencies are kept in an
+ * HdrHistogram in microseconds, so percentiles are exact to three significant digits whatever the number of requests.
+ */
+final class EndpointStats {
+    /**
+     * Status recorded for a request that got no response
+     */
+    static final int NO_RESPONSE = 0;
+
+    private final Recorder latencies = new Recorder(3);
+    private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    /**
+     * Records a completed request.
+     * @param nanos the time from sending the request to reading the whole response
+     * @param status the response status, or {@link #NO_RESPONSE}
+     */
+    void record(long nanos, int status) {
+        latencies.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Takes the requests recorded since the previous call, and starts a new interval.
+     * @return the requests of the interval
+     */
+    Interval interval() {
+        Histogram histogram = latencies.getIntervalHistogram();
+        Map<Integer, Long> counts = new TreeMap<>();
+        statuses.forEach((status, count) -> {
+            long sum = count.sumThenReset();
+            if (sum > 0) {
+                counts.put(status, sum);
+            }
+        });
+        return new Interval(histogram, counts);
+    }
+
+    /**
+     * The requests of an operation within an interval
+     */
+    static final class Interval {
+        /**
+         * Latencies in microseconds
+         */
+        final Histogram latencies;
+
+        /**
+         * Number of requests by response status
+         */
+        final Map<Integer, Long> statuses;
+
+        Interval(Histogram latencies, Map<Integer, Long> statuses) {
+            this.latencies = latencies;
+            this.statuses = statuses;
+        }
+
+        /**
+         * Counts the requests that failed: those with a 4xx or 5xx status, and those that got no response.
+         * @return the number of failed requests
+         */
+        long errors() {
+            return statuses.entrySet().stream()
+                    .filter(entry -> entry.getKey() == NO_RESPONSE || entry.getKey() >= 400)
+                    .mapToLong(Map.Entry::getValue)
+                    .sum();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.udacity.jdnd.course3.critter.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.udacity.jdnd.course3.critter.benchmark.BenchmarkContext;
+import com.udacity.jdnd.course3.critter.benchmark.BenchmarkDataset;
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the running application over HTTP.
+ *
+ * Starts the application on a random port against a private in-memory H2 database, seeds it with a
+ * {@link BenchmarkDataset}, and has many concurrent clients replay the {@link RequestMix} for a warmup period and then
+ * a measured one. Each client sends its next request as soon as the previous response has been read. The throughput,
+ * error rate and p50, p99 and p99.9 latencies of each operation and of all of them together are printed and written
+ * as JSON, to compare builds.
+ *
+ * Run with {@code mvn -Pload-test test}, passing options as {@code key=value} arguments with
+ * {@code -Dload-test.options="clients=128 duration=120"}:
+ * <ul>
+ *     <li>{@code schedules}: size of the seeded dataset, in schedules (default 10000)</li>
+ *     <li>{@code clients}: number of concurrent clients (default 32)</li>
+ *     <li>{@code warmup}: seconds of load before measuring (default 10)</li>
+ *     <li>{@code duration}: seconds of measured load (default 60)</li>
+ *     <li>{@code report}: file the JSON report is written to (default {@code target/load-test-report.json})</li>
+ *     <li>{@code seed}: seed of the clients' random sources (default 1)</li>
+ *     <li>{@code weight.<operation>}: weight of an operation in the mix, such as
+ *     {@code "weight.POST /schedule=0"}</li>
+ * </ul>
+ * Any other option is passed on to the application as a property, such as {@code critter.execution.mode=virtual}.
+ */
+public final class LoadTest {
+    private static final String WEIGHT = "weight.";
+
+    private final RequestMix mix;
+    private final Map<RequestMix.Operation, EndpointStats> stats = new LinkedHashMap<>();
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private volatile boolean stopped;
+
+    private LoadTest(RequestMix mix) {
+        this.mix = mix;
+        for (RequestMix.Operation operation : mix.operations()) {
+            stats.put(operation, new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int schedules = Integer.parseInt(take(options, "schedules", "10000"));
+        int clients = Integer.parseInt(take(options, "clients", "32"));
+        int warmup = Integer.parseInt(take(options, "warmup", "10"));
+        int duration = Integer.parseInt(take(options, "duration", "60"));
+        File report = new File(take(options, "report", "target/load-test-report.json"));
+        long seed = Long.parseLong(take(options, "seed", "1"));
+        Map<String, Integer> weights = new HashMap<>();
+        List<String> properties = new ArrayList<>();
+        options.forEach((key, value) -> {
+            if (key.startsWith(WEIGHT)) {
+                weights.put(key.substring(WEIGHT.length()), Integer.parseInt(value));
+            } else {
+                properties.add(key + "=" + value);
+            }
+        });
+
+        ConfigurableApplicationContext context = BenchmarkContext.startServer(properties.toArray(new String[0]));
+        try {
+            System.out.printf("Seeding %d schedules%n", schedules);
+            BenchmarkDataset dataset = BenchmarkDataset.seed(context, schedules);
+            URI base = URI.create("http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port"));
+            LoadTest loadTest = new LoadTest(new RequestMix(base, dataset, weights));
+
+            System.out.printf("Running %d clients: %d s warmup, %d s measured%n", clients, warmup, duration);
+            ObjectNode result = loadTest.run(clients, seed, warmup, duration);
+            ObjectNode config = result.putObject("config");
+            config.put("schedules", schedules);
+            config.put("clients", clients);
+            config.put("warmupSeconds", warmup);
+            config.put("durationSeconds", duration);
+            config.put("seed", seed);
+            weights.forEach(config.putObject("weights")::put);
+            properties.forEach(property -> config.withArray("properties").add(property));
+
+            File directory = report.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, result);
+            System.out.println("Report written to " + report);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static String take(Map<String, String> options, String key, String defaultValue) {
+        String value = options.remove(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Runs the clients through the warmup and the measured period.
+     * @return the report of the measured period
+     */
+    private ObjectNode run(int clients, long seed, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Random random = new Random(seed + i);
+            Thread thread = new Thread(() -> sendUntilStopped(random), "load-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        try {
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            stats.values().forEach(EndpointStats::interval);
+            Instant start = Instant.now();
+            long startNanos = System.nanoTime();
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            Map<RequestMix.Operation, EndpointStats.Interval> intervals = new LinkedHashMap<>();
+            stats.forEach((operation, endpointStats) -> intervals.put(operation, endpointStats.interval()));
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return report(intervals, start, seconds);
+        } finally {
+            stopped = true;
+            for (Thread thread : threads) {
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            }
+        }
+    }
+
+    private void sendUntilStopped(Random random) {
+        while (!stopped) {
+            RequestMix.Operation operation = mix.next(random);
+            long start = System.nanoTime();
+            int status;
+            try {
+                status = http.send(operation.request(random), HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = EndpointStats.NO_RESPONSE;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            stats.get(operation).record(System.nanoTime() - start, status);
+        }
+    }
+
+    private static ObjectNode report(Map<RequestMix.Operation, EndpointStats.Interval> intervals, Instant start, double seconds) {
+        ObjectNode report = new ObjectMapper().createObjectNode();
+        report.put("start", start.toString());
+        report.put("seconds", seconds);
+
+        Histogram all = new Histogram(3);
+        Map<Integer, Long> allStatuses = new TreeMap<>();
+        long allErrors = 0;
+        ArrayNode endpoints = report.putArray("endpoints");
+        System.out.printf("%-36s %10s %10s %8s %10s %10s %10s%n", "operation", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p99.9 ms");
+        for (Map.Entry<RequestMix.Operation, EndpointStats.Interval> entry : intervals.entrySet()) {
+            EndpointStats.Interval interval = entry.getValue();
+            if (interval.latencies.getTotalCount() == 0) {
+                continue;
+            }
+            all.add(interval.latencies);
+            interval.statuses.forEach((status, count) -> allStatuses.merge(status, count, Long::sum));
+            allErrors += interval.errors();
+            ObjectNode endpoint = endpoints.addObject();
+            endpoint.put("operation", entry.getKey().name);
+            describe(endpoint, entry.getKey().name, interval.latencies, interval.statuses, interval.errors(), seconds);
+        }
+        describe(report.putObject("total"), "total", all, allStatuses, allErrors, seconds);
+        return report;
+    }
+
+    private static void describe(ObjectNode node, String name, Histogram latencies, Map<Integer, Long> statuses,
+                                 long errors, double seconds) {
+        long requests = latencies.getTotalCount();
+        node.put("requests", requests);
+        node.put("throughput", requests / seconds);
+        node.put("errors", errors);
+        node.put("errorRate", requests == 0 ? 0 : (double) errors / requests);
+        ObjectNode statusCounts = node.putObject("statuses");
+        statuses.forEach((status, count) -> statusCounts.put(String.valueOf(status), count));
+        ObjectNode latency = node.putObject("latencyMillis");
+        latency.put("mean", latencies.getMean() / 1000);
+        latency.put("p50", millis(latencies, 50));
+        latency.put("p99", millis(latencies, 99));
+        latency.put("p999", millis(latencies, 99.9));
+        latency.put("max", latencies.getMaxValue() / 1000.0);
+        System.out.printf("%-36s %10d %10.1f %8d %10.2f %10.2f %10.2f%n", name, requests, requests / seconds, errors,
+                millis(latencies, 50), millis(latencies, 99), millis(latencies, 99.9));
+    }
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
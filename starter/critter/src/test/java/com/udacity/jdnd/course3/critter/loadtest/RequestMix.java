@@ -0,0 +1,154 @@
+package com.udacity.jdnd.course3.critter.loadtest;
+
+import com.udacity.jdnd.course3.critter.benchmark.BenchmarkDataset;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The requests replayed by {@link LoadTest}: the calls of the Postman collection, plus booking a schedule, with ids
+ * drawn at random from the seeded dataset. Each operation is picked in proportion to its weight; the defaults make
+ * the traffic mostly lookups, and any weight can be overridden, or set to 0 to leave the operation out.
+ *
+ * Each new schedule is booked on a date of its own after the seeded ones, so that bookings never conflict and the
+ * error rate only counts real failures.
+ */
+final class RequestMix {
+    private final URI base;
+    private final AtomicInteger bookedDays = new AtomicInteger();
+    private final List<Operation> operations = new ArrayList<>();
+    private final List<Operation> weighted = new ArrayList<>();
+    private final int[] cumulativeWeights;
+
+    /**
+     * Creates the mix.
+     * @param base the url of the application
+     * @param dataset the seeded dataset the ids are drawn from
+     * @param weights weights overriding the defaults, by operation name
+     */
+    RequestMix(URI base, BenchmarkDataset dataset, Map<String, Integer> weights) {
+        this.base = base;
+
+        add("GET /schedule/employee/{id}", 20, random -> get("/schedule/employee/" + pick(random, dataset.getEmployeeIds())));
+        add("GET /schedule/pet/{id}", 20, random -> get("/schedule/pet/" + pick(random, dataset.getPetIds())));
+        add("GET /user/employee/availability", 15, random -> send("GET", "/user/employee/availability",
+                "{\"date\":\"" + seededDate(random) + "\",\"skills\":[\"PETTING\"]}"));
+        add("GET /pet/owner/{id}", 10, random -> get("/pet/owner/" + pick(random, dataset.getCustomerIds())));
+        add("GET /user/customer/pet/{id}", 10, random -> get("/user/customer/pet/" + pick(random, dataset.getPetIds())));
+        add("GET /user/customer", 1, random -> get("/user/customer"));
+        add("POST /schedule", 6, random -> send("POST", "/schedule",
+                "{\"employeeIds\":[" + pick(random, dataset.getEmployeeIds()) + "],\"petIds\":[" + pick(random, dataset.getPetIds())
+                        + "],\"date\":\"" + newDate() + "\",\"activities\":[\"FEEDING\"]}"));
+        add("POST /user/customer", 4, random -> send("POST", "/user/customer",
+                "{\"name\":\"Load customer\",\"phoneNumber\":\"123-456-789\"}"));
+        add("POST /pet", 4, random -> send("POST", "/pet",
+                "{\"type\":\"CAT\",\"name\":\"Load pet\",\"ownerId\":" + pick(random, dataset.getCustomerIds()) + "}"));
+        add("POST /user/employee", 2, random -> send("POST", "/user/employee",
+                "{\"name\":\"Load employee\",\"skills\":[\"PETTING\",\"FEEDING\"],\"daysAvailable\":[\"MONDAY\",\"FRIDAY\"]}"));
+        add("PUT /user/employee/{id}", 2, random -> send("PUT", "/user/employee/" + pick(random, dataset.getEmployeeIds()),
+                "[\"" + DayOfWeek.of(1 + random.nextInt(7)) + "\",\"" + DayOfWeek.of(1 + random.nextInt(7)) + "\"]"));
+
+        for (String name : weights.keySet()) {
+            if (operations.stream().noneMatch(operation -> operation.name.equals(name))) {
+                throw new IllegalArgumentException("Unknown operation: " + name);
+            }
+        }
+        for (Operation operation : operations) {
+            if (weights.getOrDefault(operation.name, operation.weight) > 0) {
+                weighted.add(operation);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("Every operation has a weight of 0");
+        }
+        cumulativeWeights = new int[weighted.size()];
+        int total = 0;
+        for (int i = 0; i < weighted.size(); i++) {
+            total += weights.getOrDefault(weighted.get(i).name, weighted.get(i).weight);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * Gets every operation, including those left out of the mix.
+     * @return the operations in declaration order
+     */
+    List<Operation> operations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Picks the next operation to send.
+     * @param random the random source of the calling client
+     * @return an operation, in proportion to its weight
+     */
+    Operation next(Random random) {
+        int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (draw < cumulativeWeights[i]) {
+                return weighted.get(i);
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void add(String name, int weight, Function<Random, HttpRequest> factory) {
+        operations.add(new Operation(name, weight, factory));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).GET().build();
+    }
+
+    private HttpRequest send(String method, String path, String json) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static long pick(Random random, long[] ids) {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    private static LocalDate seededDate(Random random) {
+        return BenchmarkDataset.FIRST_DATE.plusDays(random.nextInt(BenchmarkDataset.DAYS));
+    }
+
+    private LocalDate newDate() {
+        return BenchmarkDataset.FIRST_DATE.plusDays(BenchmarkDataset.DAYS + bookedDays.getAndIncrement());
+    }
+
+    /**
+     * A kind of request, named after its method and path
+     */
+    static final class Operation {
+        final String name;
+        final int weight;
+        private final Function<Random, HttpRequest> factory;
+
+        private Operation(String name, int weight, Function<Random, HttpRequest> factory) {
+            this.name = name;
+            this.weight = weight;
+            this.factory = factory;
+        }
+
+        /**
+         * Creates a request of this kind.
+         * @param random the random source of the calling client
+         * @return the request
+         */
+        HttpRequest request(Random random) {
+            return factory.apply(random);
+        }
+    }
+}